@@ -0,0 +1,420 @@
+package ca.cglab.udgapp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ca.cglab.udgapp.experiment.EstimateWriter;
+import ca.cglab.udgapp.experiment.ExperimentRunner;
+import ca.cglab.udgapp.experiment.GraphProperty;
+import ca.cglab.udgapp.experiment.ParameterRange;
+import ca.cglab.udgapp.experiment.ResultWriter;
+import ca.cglab.udgapp.experiment.SearchResultWriter;
+import ca.cglab.udgapp.experiment.ThresholdEstimate;
+import ca.cglab.udgapp.experiment.ThresholdEstimator;
+import ca.cglab.udgapp.experiment.ThresholdSearch;
+import ca.cglab.udgapp.experiment.TrialParameters;
+import ca.cglab.udgapp.graphmodel.ProgressListener;
+import ca.cglab.udgapp.graphmodel.RandomPoints;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// Runs threshold sweeps without the GUI and streams one result row per trial.
+// With --estimate true it writes one row per parameter point instead, with the probability
+// of each property and its confidence interval over as many trials as that point needs.
+// With --search <property> it bisects epsilon between the smallest and largest --epsilon
+// to find where the property holds in half of the graphs, once for every n, k, a and b.
+// Examples:
+//   java ca.cglab.udgapp.BatchExperimentLauncher --n 1000,10000 --k 3 --a 1 --b 2
+//        --epsilon -0.1:0.1:0.05 --reps 20 --threads 16 --format csv --out sweep.csv
+//   java ca.cglab.udgapp.BatchExperimentLauncher --n 10000 --k 3 --a 3 --b 4
+//        --epsilon -0.1:0.1:0.02 --estimate true --half-width 0.03
+//   java ca.cglab.udgapp.BatchExperimentLauncher --n 1000,10000,100000 --k 3 --a 3 --b 4
+//        --epsilon -0.2,0.2 --search component_at_least_k
+//   java ca.cglab.udgapp.BatchExperimentLauncher --n 100000 --k 3 --a 1 --b 2
+//        --epsilon -0.1:0.1:0.004 --reps 10 --sweep true
+//   java ca.cglab.udgapp.BatchExperimentLauncher --n 10000 --k 3 --a 1 --b 2 --trial-seed 42 --save-dir odd
+//   java ca.cglab.udgapp.BatchExperimentLauncher --load odd/trial-0.udg --k 3 --a 1 --b 2 --epsilon -0.1:0.1:0.01
+public class BatchExperimentLauncher
+{
+	private static final List<String> OPTION_NAMES =
+		Arrays.asList("n", "k", "a", "b", "epsilon", "reps", "threads", "format", "out", "seed", "trial-seed", "progress",
+					  "streaming", "estimate", "properties", "half-width", "z", "min-trials", "max-trials",
+					  "search", "point-sets", "tolerance", "load", "save-dir", "sweep");
+					
+	private static final String USAGE =
+		"Usage: BatchExperimentLauncher (--n <range> | --load <file>) [--k <range>] [--a <range>] [--b <range>]\n" +
+		"                               [--epsilon <range>] [--reps <count>] [--threads <count>]\n" +
+		"                               [--format csv|jsonl] [--out <file>]\n" +
+		"                               [--seed <seed> | --trial-seed <seed>] [--progress true|false]\n" +
+		"                               [--streaming true|false] [--sweep true|false]\n" +
+		"                               [--estimate true|false] [--properties <list>] [--half-width <width>]\n" +
+		"                               [--z <quantile>] [--min-trials <count>] [--max-trials <count>]\n" +
+		"                               [--search <property>] [--point-sets <count>] [--tolerance <width>]\n" +
+		"                               [--save-dir <directory>]\n" +
+		"A range is a value (5), a list (100,1000) or start:end:step (-0.1:0.1:0.05).\n" +
+		"Defaults: k = 1, a = 1, b = 1, epsilon = 0, reps = 1, threads = all cores, csv to standard output.\n" +
+		"--seed is the base seed every trial's seed is derived from (random by default).\n" +
+		"--trial-seed uses the same seed for every trial, to replay a trial from its seed column.\n" +
+		"--progress prints how many trials are done to standard error.\n" +
+		"--streaming counts the edges as they are found instead of storing them, for graphs too big to keep.\n" +
+		"--sweep keeps the seed of each n and repetition the same for every k, a, b and epsilon and measures\n" +
+		"        all their radii on one radius sweep, so the graph is only built once for the largest radius.\n" +
+		"--estimate runs trials at each point until every property's interval is at most --half-width\n" +
+		"           on each side (default 0.05), using between --min-trials (30) and --max-trials (10000).\n" +
+		"           --z is the normal quantile of the intervals (1.96, for 95%). --reps is not used.\n" +
+		"--search bisects epsilon until the crossing is known to within --tolerance (default 0.001),\n" +
+		"         reusing --point-sets (64) point sets at every step. --reps is not used.\n" +
+		"--load runs every trial on the vertices of a graph saved with --save-dir or UnitDiskGraph.save(),\n" +
+		"       so only the radius changes. n and the seed are the file's, --n and the seeds are not used.\n" +
+		"--save-dir saves the vertices of every trial to <directory>/trial-<id>.udg before its edges are built.\n" +
+		"Properties: " + Arrays.toString(GraphProperty.values()) + ", all of them by default.\n" +
+		"Ctrl-C stops the running trials and keeps the results written so far.";
+		
+	public static void main(String[] args)
+	{
+		Map<String, String> options;
+		List<TrialParameters> trials;
+		int threads;
+		ResultWriter.Format format;
+		boolean showProgress;
+		boolean streaming;
+		boolean sweep;
+		ThresholdEstimator estimator = null;
+		ThresholdSearch search = null;
+		File input = null;
+		File saveDirectory = null;
+		try
+		{
+			options = parseOptions(args);
+			int[] ns;
+			boolean replay;
+			long seed;
+			if(options.containsKey("load"))
+			{
+				if(options.containsKey("n") || options.containsKey("seed") || options.containsKey("trial-seed"))
+				{
+					throw new IllegalArgumentException("--n, --seed and --trial-seed cannot be used with --load");
+				}
+				input = new File(options.get("load"));
+				UnitDiskGraph udg = UnitDiskGraph.load(input);
+				ns = new int[] { udg.getVertexCount() };
+				replay = true;
+				seed = udg.getSeed();
+			}
+			else
+			{
+				if(!options.containsKey("n"))
+				{
+					throw new IllegalArgumentException("--n is required");
+				}
+				if(options.containsKey("seed") && options.containsKey("trial-seed"))
+				{
+					throw new IllegalArgumentException("--seed and --trial-seed cannot be used together");
+				}
+				ns = ParameterRange.parse(options.get("n")).toIntValues();
+				replay = options.containsKey("trial-seed");
+				seed = replay ? Long.parseLong(options.get("trial-seed"))
+						: options.containsKey("seed") ? Long.parseLong(options.get("seed")) : RandomPoints.newSeed();
+			}
+			if(options.containsKey("save-dir"))
+			{
+				saveDirectory = new File(options.get("save-dir"));
+				if(!saveDirectory.isDirectory() && !saveDirectory.mkdirs())
+				{
+					throw new IllegalArgumentException("Cannot create the directory " + saveDirectory);
+				}
+			}
+			streaming = parseBoolean(options, "streaming", false);
+			sweep = parseBoolean(options, "sweep", false);
+			trials = ExperimentRunner.createTrials(
+					ns,
+					parseRange(options, "k", 1).toIntValues(),
+					parseRange(options, "a", 1).getValues(),
+					parseRange(options, "b", 1).getValues(),
+					parseRange(options, "epsilon", 0).getValues(),
+					parseInt(options, "reps", 1),
+					seed, !replay, sweep);
+			threads = parseInt(options, "threads", Runtime.getRuntime().availableProcessors());
+			format = ResultWriter.Format.valueOf(get(options, "format", "csv").toUpperCase());
+			showProgress = parseBoolean(options, "progress", false);
+			if(parseBoolean(options, "estimate", false))
+			{
+				if(options.containsKey("reps"))
+				{
+					throw new IllegalArgumentException("--reps cannot be used with --estimate");
+				}
+				estimator = createEstimator(options, threads);
+			}
+			if((input != null || saveDirectory != null) && (estimator != null || options.containsKey("search")))
+			{
+				throw new IllegalArgumentException("--load and --save-dir cannot be used with --estimate or --search");
+			}
+			if(sweep && (streaming || estimator != null || options.containsKey("search")))
+			{
+				throw new IllegalArgumentException("--sweep cannot be used with --streaming, --estimate or --search");
+			}
+			if(options.containsKey("search"))
+			{
+				if(estimator != null || options.containsKey("reps"))
+				{
+					throw new IllegalArgumentException("--search cannot be used with --estimate or --reps");
+				}
+				if(ParameterRange.parse(get(options, "epsilon", "0")).size() < 2)
+				{
+					throw new IllegalArgumentException("--search needs at least two --epsilon values to search between");
+				}
+				search = new ThresholdSearch(threads, GraphProperty.parse(options.get("search")));
+				search.setNumPointSets(parseInt(options, "point-sets", 64));
+				search.setTolerance(Double.parseDouble(get(options, "tolerance", "0.001")));
+			}
+			else if(options.containsKey("point-sets") || options.containsKey("tolerance"))
+			{
+				throw new IllegalArgumentException("--point-sets and --tolerance need --search");
+			}
+			if(estimator == null
+					&& (options.containsKey("properties") || options.containsKey("half-width") || options.containsKey("z")
+					|| options.containsKey("min-trials") || options.containsKey("max-trials")))
+			{
+				throw new IllegalArgumentException("--properties, --half-width, --z and the trial limits need --estimate true");
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Also catches NumberFormatException
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		catch(ArithmeticException e)
+		{
+			System.err.println("b cannot be zero.");
+			System.exit(1);
+			return;
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not read the graph: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		
+		try
+		{
+			Writer out = options.containsKey("out")
+					? new OutputStreamWriter(new FileOutputStream(options.get("out")), Charset.forName("UTF-8"))
+					: new OutputStreamWriter(System.out, Charset.forName("UTF-8"));
+			out = new BufferedWriter(out);
+			final ExperimentRunner runner = new ExperimentRunner(threads, new ResultWriter(out, format));
+			runner.setStreaming(streaming);
+			runner.setSweep(sweep);
+			runner.setInput(input);
+			runner.setSaveDirectory(saveDirectory);
+			final ThresholdEstimator finalEstimator = estimator;
+			final ThresholdSearch finalSearch = search;
+			if(showProgress)
+			{
+				ProgressListener listener = new ProgressListener()
+				{
+					public void progressMade(String task, long done, long total)
+					{
+						System.err.println(done + " of " + total + " " + task + " done");
+					}
+				};
+				runner.setProgressListener(listener);
+				if(estimator != null)
+				{
+					estimator.setProgressListener(listener);
+				}
+				if(search != null)
+				{
+					search.setProgressListener(listener);
+				}
+			}
+			
+			// On Ctrl-C the running trials are cancelled and the output is flushed before the JVM goes away
+			final CountDownLatch finished = new CountDownLatch(1);
+			Runtime.getRuntime().addShutdownHook(new Thread()
+			{
+				public void run()
+				{
+					runner.cancel();
+					if(finalEstimator != null)
+					{
+						finalEstimator.cancel();
+					}
+					if(finalSearch != null)
+					{
+						finalSearch.cancel();
+					}
+					try
+					{
+						finished.await(10, TimeUnit.SECONDS);
+					}
+					catch(InterruptedException e)
+					{
+						// Give up waiting and let the JVM exit
+					}
+				}
+			});
+			try
+			{
+				if(estimator != null)
+				{
+					EstimateWriter writer = new EstimateWriter(out, format, estimator.getProperties());
+					writer.writeHeader();
+					for(ThresholdEstimate estimate : estimator.estimate(trials))
+					{
+						writer.write(estimate);
+					}
+				}
+				else if(search != null)
+				{
+					runSearches(search, trials, new SearchResultWriter(out, format));
+				}
+				else
+				{
+					runner.run(trials);
+				}
+			}
+			catch(CancellationException e)
+			{
+				System.err.println(e.getMessage());
+			}
+			finally
+			{
+				out.flush();
+				if(options.containsKey("out"))
+				{
+					out.close();
+				}
+				finished.countDown();
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write the results: " + e.getMessage());
+			System.exit(2);
+		}
+		catch(InterruptedException e)
+		{
+			System.exit(3);
+		}
+	}
+	
+	// The trials hold every n, k, a and b once per epsilon. Each combination is searched once,
+	// between the smallest and the largest epsilon, with the seed of its first trial.
+	private static void runSearches(ThresholdSearch search, List<TrialParameters> trials, SearchResultWriter writer)
+			throws IOException, InterruptedException
+	{
+		double low = Double.POSITIVE_INFINITY;
+		double high = Double.NEGATIVE_INFINITY;
+		for(TrialParameters trial : trials)
+		{
+			low = Math.min(low, trial.getEpsilon());
+			high = Math.max(high, trial.getEpsilon());
+		}
+		writer.writeHeader();
+		for(TrialParameters trial : trials)
+		{
+			if(trial.getEpsilon() != low)
+			{
+				continue;
+			}
+			try
+			{
+				writer.write(search.search(trial.getNumVertices(), trial.getK(), trial.getA(), trial.getB(),
+										   low, high, trial.getSeed()));
+			}
+			catch(IllegalStateException e)
+			{
+				// No crossing for this combination, go on with the others
+				System.err.println(e.getMessage());
+			}
+		}
+	}
+	
+	private static ThresholdEstimator createEstimator(Map<String, String> options, int threads)
+	{
+		List<GraphProperty> properties = new ArrayList<GraphProperty>();
+		if(options.containsKey("properties"))
+		{
+			for(String name : options.get("properties").split(","))
+			{
+				properties.add(GraphProperty.parse(name.trim()));
+			}
+		}
+		else
+		{
+			properties.addAll(Arrays.asList(GraphProperty.values()));
+		}
+		ThresholdEstimator estimator = new ThresholdEstimator(threads, properties);
+		estimator.setTargetHalfWidth(Double.parseDouble(get(options, "half-width", "0.05")));
+		estimator.setZ(Double.parseDouble(get(options, "z", "1.96")));
+		estimator.setTrialLimits(parseInt(options, "min-trials", 30), parseInt(options, "max-trials", 10000));
+		return estimator;
+	}
+	
+	// Reads "--name value" pairs
+	private static Map<String, String> parseOptions(String[] args)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		for(int i = 0; i < args.length; i += 2)
+		{
+			if(!args[i].startsWith("--") || i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("Bad argument: " + args[i]);
+			}
+			if(!OPTION_NAMES.contains(args[i].substring(2)))
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		return options;
+	}
+	
+	private static String get(Map<String, String> options, String name, String defaultValue)
+	{
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+	
+	private static ParameterRange parseRange(Map<String, String> options, String name, double defaultValue)
+	{
+		String value = options.get(name);
+		return value == null ? ParameterRange.of(defaultValue) : ParameterRange.parse(value);
+	}
+	
+	private static boolean parseBoolean(Map<String, String> options, String name, boolean defaultValue)
+	{
+		String value = options.get(name);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+		if(!value.equals("true") && !value.equals("false"))
+		{
+			throw new IllegalArgumentException("--" + name + " has to be true or false");
+		}
+		return Boolean.parseBoolean(value);
+	}
+	
+	private static int parseInt(Map<String, String> options, String name, int defaultValue)
+	{
+		String value = options.get(name);
+		return value == null ? defaultValue : Integer.parseInt(value);
+	}
+}
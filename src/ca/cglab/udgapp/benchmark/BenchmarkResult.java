@@ -0,0 +1,82 @@
+package ca.cglab.udgapp.benchmark;
+
+import ca.cglab.udgapp.graphmodel.VertexOrder;
+
+// The measurements of one operation on one engine for one n, radius exponent and vertex order
+public final class BenchmarkResult
+{
+	private final Operation operation;
+	private final Engine engine;
+	private final VertexOrder order;
+	private final int numVertices;
+	private final double exponent;
+	private final int numEdges;
+	
+	// One entry per measurement iteration, in nanoseconds per operation
+	private final double[] nanosPerOp;
+	private final long totalOps;
+	private final double bytesPerOp;
+	private final long gcCount;
+	private final long gcMillis;
+	
+	public BenchmarkResult(Operation operation, Engine engine, VertexOrder order, int numVertices, double exponent,
+						   int numEdges, double[] nanosPerOp, long totalOps, double bytesPerOp, long gcCount, long gcMillis)
+	{
+		this.operation = operation;
+		this.engine = engine;
+		this.order = order;
+		this.numVertices = numVertices;
+		this.exponent = exponent;
+		this.numEdges = numEdges;
+		this.nanosPerOp = nanosPerOp;
+		this.totalOps = totalOps;
+		this.bytesPerOp = bytesPerOp;
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+	}
+	
+	public double getMeanNanosPerOp()
+	{
+		double sum = 0;
+		for(double t : nanosPerOp)
+		{
+			sum += t;
+		}
+		return sum / nanosPerOp.length;
+	}
+	
+	// Sample standard deviation over the iterations, 0 with a single iteration
+	public double getStdDevNanosPerOp()
+	{
+		if(nanosPerOp.length < 2)
+		{
+			return 0;
+		}
+		double mean = getMeanNanosPerOp();
+		double sum = 0;
+		for(double t : nanosPerOp)
+		{
+			sum += (t - mean) * (t - mean);
+		}
+		return Math.sqrt(sum / (nanosPerOp.length - 1));
+	}
+	
+	public double getOpsPerSecond()
+	{
+		return 1e9 / getMeanNanosPerOp();
+	}
+	
+	// Getters
+	public Operation getOperation() { return operation; }
+	public Engine getEngine() { return engine; }
+	public VertexOrder getOrder() { return order; }
+	public int getNumVertices() { return numVertices; }
+	public double getExponent() { return exponent; }
+	public double getRadius() { return 1 / Math.pow(numVertices, exponent); }
+	public int getNumEdges() { return numEdges; }
+	public long getTotalOps() { return totalOps; }
+	// Negative if allocations can't be counted on this JVM
+	public double getBytesPerOp() { return bytesPerOp; }
+	public long getGcCount() { return gcCount; }
+	public long getGcMillis() { return gcMillis; }
+}
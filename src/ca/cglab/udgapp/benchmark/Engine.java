@@ -0,0 +1,27 @@
+package ca.cglab.udgapp.benchmark;
+
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// The ways a UnitDiskGraph can be set up to do its work.
+// BRUTE_FORCE compares every pair on one thread and is the baseline the others are measured against.
+public enum Engine
+{
+	BRUTE_FORCE(false, false),
+	INDEXED(true, false),
+	PARALLEL(true, true);
+	
+	private final boolean useSpatialIndex;
+	private final boolean useAllCores;
+	
+	private Engine(boolean useSpatialIndex, boolean useAllCores)
+	{
+		this.useSpatialIndex = useSpatialIndex;
+		this.useAllCores = useAllCores;
+	}
+	
+	public void configure(UnitDiskGraph udg)
+	{
+		udg.setUseSpatialIndex(useSpatialIndex);
+		udg.setParallelism(useAllCores ? Runtime.getRuntime().availableProcessors() : 1);
+	}
+}
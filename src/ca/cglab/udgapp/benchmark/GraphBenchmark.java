@@ -0,0 +1,410 @@
+package ca.cglab.udgapp.benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import ca.cglab.udgapp.experiment.ParameterRange;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+import ca.cglab.udgapp.graphmodel.VertexOrder;
+
+// Times the graph operations for a range of graph sizes and radius exponents on every engine.
+// The radius is r = 1 / n^exponent, where the exponent stands for a / b + epsilon.
+// Each case is warmed up first, then timed over several fixed length iterations.
+// The report has the throughput, the bytes allocated per operation, the garbage collections,
+// the speedup over the brute force engine and over unordered vertices, and, per operation,
+// how the time grows with n. Java can't read the hardware counters, so to see the cache misses
+// behind the vertex order speedups run it under "perf stat -e cache-misses,cache-references".
+// Example:
+//   java ca.cglab.udgapp.benchmark.GraphBenchmark --n 1000,2000,4000,8000 --exponent 0.5,0.6
+//        --engine brute_force,indexed --benchmark createNewConnectedEdges
+//   java ca.cglab.udgapp.benchmark.GraphBenchmark --n 4000000 --engine indexed --order none,hilbert
+public final class GraphBenchmark
+{
+	private static final List<String> OPTION_NAMES =
+		Arrays.asList("n", "exponent", "engine", "benchmark", "warmup-ms", "iteration-ms", "iterations",
+					  "max-brute-n", "seed", "format", "out", "order");
+
+	private static final String USAGE =
+		"Usage: GraphBenchmark [--n <range>] [--exponent <range>] [--engine <list>] [--benchmark <list>]\n" +
+		"                      [--warmup-ms <millis>] [--iteration-ms <millis>] [--iterations <count>]\n" +
+		"                      [--max-brute-n <n>] [--seed <seed>] [--format table|csv] [--out <file>]\n" +
+		"                      [--order <list>]\n" +
+		"A range is a value (5), a list (100,1000) or start:end:step (0.4:0.6:0.1).\n" +
+		"Engines: " + Arrays.toString(Engine.values()) + "\n" +
+		"Benchmarks: " + Arrays.toString(Operation.values()) + " or their method names\n" +
+		"Vertex orders: " + Arrays.toString(VertexOrder.values()) + "\n" +
+		"Defaults: n = 1000,2000,4000,8000, exponent = 0.5, every engine and benchmark, 1000 ms warmup,\n" +
+		"          5 iterations of 1000 ms, brute force up to n = 20000, seed = 1, order = none,\n" +
+		"          a table on standard output.";
+
+	private final ResourceMeter meter = new ResourceMeter();
+
+	private long warmupNanos = 1000000000L;
+	private long iterationNanos = 1000000000L;
+	private int iterations = 5;
+
+	// Every measured result is added to this so the JIT can't drop the work
+	private long sink;
+
+	public static void main(String[] args)
+	{
+		Map<String, String> options;
+		int[] ns;
+		double[] exponents;
+		List<Engine> engines;
+		List<Operation> operations;
+		List<VertexOrder> orders;
+		int maxBruteForceN;
+		long seed;
+		GraphBenchmark benchmark = new GraphBenchmark();
+		try
+		{
+			options = parseOptions(args);
+			ns = ParameterRange.parse(get(options, "n", "1000,2000,4000,8000")).toIntValues();
+			exponents = ParameterRange.parse(get(options, "exponent", "0.5")).getValues();
+			engines = new ArrayList<Engine>();
+			for(String name : get(options, "engine", "brute_force,indexed,parallel").split(","))
+			{
+				engines.add(Engine.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+			}
+			operations = new ArrayList<Operation>();
+			if(options.containsKey("benchmark"))
+			{
+				for(String name : options.get("benchmark").split(","))
+				{
+					operations.add(Operation.parse(name.trim()));
+				}
+			}
+			else
+			{
+				operations.addAll(Arrays.asList(Operation.values()));
+			}
+			orders = new ArrayList<VertexOrder>();
+			for(String name : get(options, "order", "none").split(","))
+			{
+				orders.add(VertexOrder.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+			}
+			benchmark.warmupNanos = Long.parseLong(get(options, "warmup-ms", "1000")) * 1000000L;
+			benchmark.iterationNanos = Long.parseLong(get(options, "iteration-ms", "1000")) * 1000000L;
+			benchmark.iterations = Integer.parseInt(get(options, "iterations", "5"));
+			if(benchmark.iterations < 1)
+			{
+				throw new IllegalArgumentException("Need at least one iteration");
+			}
+			maxBruteForceN = Integer.parseInt(get(options, "max-brute-n", "20000"));
+			seed = Long.parseLong(get(options, "seed", "1"));
+			if(!get(options, "format", "table").matches("table|csv"))
+			{
+				throw new IllegalArgumentException("Unknown format: " + options.get("format"));
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Also catches NumberFormatException
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+
+		if(!benchmark.meter.canCountAllocations())
+		{
+			System.err.println("This JVM can't count allocated bytes, the allocation columns will be empty.");
+		}
+
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for(double exponent : exponents)
+		{
+			for(int n : ns)
+			{
+				for(Engine engine : engines)
+				{
+					if(engine == Engine.BRUTE_FORCE && n > maxBruteForceN)
+					{
+						continue;
+					}
+					for(VertexOrder order : orders)
+					{
+						System.err.println("Running " + engine + " with n = " + n + ", exponent = " + exponent
+										   + ", order = " + order);
+						results.addAll(benchmark.runCase(engine, order, n, exponent, seed, operations));
+					}
+				}
+			}
+		}
+
+		try
+		{
+			PrintWriter out = options.containsKey("out")
+					? new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.get("out")), Charset.forName("UTF-8")))
+					: new PrintWriter(new OutputStreamWriter(System.out, Charset.forName("UTF-8")));
+			if(get(options, "format", "table").equals("csv"))
+			{
+				writeCsv(out, results);
+			}
+			else
+			{
+				writeTable(out, results);
+			}
+			out.flush();
+			if(options.containsKey("out"))
+			{
+				out.close();
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write the results: " + e.getMessage());
+			System.exit(2);
+		}
+		// Keeps the sink alive
+		if(benchmark.sink == 42) System.err.println();
+		System.exit(0);
+	}
+
+	// Builds one graph and times every operation on it
+	private List<BenchmarkResult> runCase(Engine engine, VertexOrder order, int n, double exponent, long seed,
+										  List<Operation> operations)
+	{
+		UnitDiskGraph udg = new UnitDiskGraph(n, seed);
+		engine.configure(udg);
+		udg.setVertexOrder(order);
+		udg.setMaxDistance(1 / Math.pow(n, exponent));
+		Operation.Fixture fixture = new Operation.Fixture(udg);
+
+		List<BenchmarkResult> results = new ArrayList<BenchmarkResult>();
+		for(Operation operation : operations)
+		{
+			results.add(runOperation(operation, engine, order, n, exponent, fixture));
+		}
+		// Lets the pool threads go
+		udg.setParallelism(1);
+		return results;
+	}
+
+	private BenchmarkResult runOperation(Operation operation, Engine engine, VertexOrder order, int n, double exponent,
+										 Operation.Fixture fixture)
+	{
+		long warmupEnd = System.nanoTime() + warmupNanos;
+		do
+		{
+			operation.prepare(fixture);
+			sink += operation.measure(fixture);
+		}
+		while(System.nanoTime() < warmupEnd);
+
+		double[] nanosPerOp = new double[iterations];
+		long totalOps = 0;
+		long totalBytes = 0;
+		long gcCount = meter.getGcCount();
+		long gcMillis = meter.getGcMillis();
+		long readingCost = measureReadingCost();
+		for(int i = 0; i < iterations; i++)
+		{
+			long ops = 0;
+			long busyNanos = 0;
+			long iterationEnd = System.nanoTime() + iterationNanos;
+			do
+			{
+				// Only measure() is timed, prepare() can be as slow as it likes
+				operation.prepare(fixture);
+				long bytesBefore = meter.getAllocatedBytes();
+				long start = System.nanoTime();
+				sink += operation.measure(fixture);
+				busyNanos += System.nanoTime() - start;
+				totalBytes += meter.getAllocatedBytes() - bytesBefore - readingCost;
+				ops++;
+			}
+			while(System.nanoTime() < iterationEnd);
+			nanosPerOp[i] = (double) busyNanos / ops;
+			totalOps += ops;
+		}
+		gcCount = meter.getGcCount() - gcCount;
+		gcMillis = meter.getGcMillis() - gcMillis;
+
+		operation.restore(fixture);
+		double bytesPerOp = meter.canCountAllocations() ? Math.max(0, (double) totalBytes / totalOps) : -1;
+		return new BenchmarkResult(operation, engine, order, n, exponent, fixture.getGraph().getNumEdges(),
+								   nanosPerOp, totalOps, bytesPerOp, gcCount, gcMillis);
+	}
+
+	// Reading the allocation counters allocates a little itself, which is taken off every operation
+	private long measureReadingCost()
+	{
+		long cost = Long.MAX_VALUE;
+		for(int i = 0; i < 10; i++)
+		{
+			long before = meter.getAllocatedBytes();
+			cost = Math.min(cost, meter.getAllocatedBytes() - before);
+		}
+		return cost;
+	}
+
+	private static void writeTable(PrintWriter out, List<BenchmarkResult> results)
+	{
+		Map<String, BenchmarkResult> baselines = findBaselines(results);
+		Map<String, BenchmarkResult> unordered = findUnordered(results);
+		out.printf(Locale.ROOT, "%-34s %-12s %-8s %9s %8s %10s %14s %14s %12s %6s %9s %9s%n",
+				   "benchmark", "engine", "order", "n", "exponent", "edges", "ops/s", "ms/op", "KB/op", "gc",
+				   "vs brute", "vs none");
+		for(BenchmarkResult result : results)
+		{
+			BenchmarkResult baseline = baselines.get(keyOf(result));
+			BenchmarkResult none = unordered.get(orderKeyOf(result));
+			out.printf(Locale.ROOT, "%-34s %-12s %-8s %9d %8.3f %10d %14.2f %7.3f +- %-5.3f %12s %6d %9s %9s%n",
+					   result.getOperation().getMethodName(), result.getEngine(), result.getOrder(), result.getNumVertices(),
+					   result.getExponent(), result.getNumEdges(), result.getOpsPerSecond(),
+					   result.getMeanNanosPerOp() / 1e6, result.getStdDevNanosPerOp() / 1e6,
+					   result.getBytesPerOp() < 0 ? "-" : String.format(Locale.ROOT, "%.1f", result.getBytesPerOp() / 1024),
+					   result.getGcCount(),
+					   baseline == null ? "-" : String.format(Locale.ROOT, "%.1fx",
+							   baseline.getMeanNanosPerOp() / result.getMeanNanosPerOp()),
+					   none == null ? "-" : String.format(Locale.ROOT, "%.2fx",
+							   none.getMeanNanosPerOp() / result.getMeanNanosPerOp()));
+		}
+
+		out.println();
+		out.println("Scaling: time per operation grows like n^slope (least squares fit of log time against log n)");
+		for(Map.Entry<String, List<BenchmarkResult>> curve : groupCurves(results).entrySet())
+		{
+			if(curve.getValue().size() > 1)
+			{
+				out.printf(Locale.ROOT, "%-60s slope %.2f%n", curve.getKey(), scalingSlope(curve.getValue()));
+			}
+		}
+	}
+
+	private static void writeCsv(PrintWriter out, List<BenchmarkResult> results)
+	{
+		Map<String, BenchmarkResult> baselines = findBaselines(results);
+		Map<String, BenchmarkResult> unordered = findUnordered(results);
+		out.println("benchmark,engine,order,n,exponent,r,edges,ops_per_second,ns_per_op,ns_per_op_stddev,"
+				  + "bytes_per_op,gc_count,gc_millis,speedup_vs_brute_force,speedup_vs_unordered");
+		for(BenchmarkResult result : results)
+		{
+			BenchmarkResult baseline = baselines.get(keyOf(result));
+			BenchmarkResult none = unordered.get(orderKeyOf(result));
+			out.println(result.getOperation().getMethodName() + "," + result.getEngine() + "," + result.getOrder() + ","
+					  + result.getNumVertices() + "," + result.getExponent() + "," + result.getRadius() + ","
+					  + result.getNumEdges() + "," + result.getOpsPerSecond() + "," + result.getMeanNanosPerOp() + ","
+					  + result.getStdDevNanosPerOp() + "," + (result.getBytesPerOp() < 0 ? "" : result.getBytesPerOp()) + ","
+					  + result.getGcCount() + "," + result.getGcMillis() + ","
+					  + (baseline == null ? "" : baseline.getMeanNanosPerOp() / result.getMeanNanosPerOp()) + ","
+					  + (none == null ? "" : none.getMeanNanosPerOp() / result.getMeanNanosPerOp()));
+		}
+	}
+
+	// The brute force result for the same operation, order, n and exponent as each result
+	private static Map<String, BenchmarkResult> findBaselines(List<BenchmarkResult> results)
+	{
+		Map<String, BenchmarkResult> baselines = new HashMap<String, BenchmarkResult>();
+		for(BenchmarkResult result : results)
+		{
+			if(result.getEngine() == Engine.BRUTE_FORCE)
+			{
+				baselines.put(keyOf(result), result);
+			}
+		}
+		return baselines;
+	}
+
+	private static String keyOf(BenchmarkResult result)
+	{
+		return result.getOperation() + "/" + result.getOrder() + "/" + result.getNumVertices() + "/" + result.getExponent();
+	}
+	
+	// The result with unordered vertices for the same operation, engine, n and exponent as each result
+	private static Map<String, BenchmarkResult> findUnordered(List<BenchmarkResult> results)
+	{
+		Map<String, BenchmarkResult> unordered = new HashMap<String, BenchmarkResult>();
+		for(BenchmarkResult result : results)
+		{
+			if(result.getOrder() == VertexOrder.NONE)
+			{
+				unordered.put(orderKeyOf(result), result);
+			}
+		}
+		return unordered;
+	}
+	
+	private static String orderKeyOf(BenchmarkResult result)
+	{
+		return result.getOperation() + "/" + result.getEngine() + "/" + result.getNumVertices() + "/" + result.getExponent();
+	}
+
+	// The results for each operation, engine, order and exponent, in increasing n
+	private static Map<String, List<BenchmarkResult>> groupCurves(List<BenchmarkResult> results)
+	{
+		Map<String, List<BenchmarkResult>> curves = new LinkedHashMap<String, List<BenchmarkResult>>();
+		for(BenchmarkResult result : results)
+		{
+			String key = result.getOperation().getMethodName() + " " + result.getEngine() + " " + result.getOrder()
+						 + " exponent " + result.getExponent();
+			List<BenchmarkResult> curve = curves.get(key);
+			if(curve == null)
+			{
+				curve = new ArrayList<BenchmarkResult>();
+				curves.put(key, curve);
+			}
+			curve.add(result);
+		}
+		return curves;
+	}
+
+	private static double scalingSlope(List<BenchmarkResult> curve)
+	{
+		double meanX = 0;
+		double meanY = 0;
+		for(BenchmarkResult result : curve)
+		{
+			meanX += Math.log(result.getNumVertices());
+			meanY += Math.log(result.getMeanNanosPerOp());
+		}
+		meanX /= curve.size();
+		meanY /= curve.size();
+		double numerator = 0;
+		double denominator = 0;
+		for(BenchmarkResult result : curve)
+		{
+			double dx = Math.log(result.getNumVertices()) - meanX;
+			numerator += dx * (Math.log(result.getMeanNanosPerOp()) - meanY);
+			denominator += dx * dx;
+		}
+		return numerator / denominator;
+	}
+
+	// Reads "--name value" pairs
+	private static Map<String, String> parseOptions(String[] args)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		for(int i = 0; i < args.length; i += 2)
+		{
+			if(!args[i].startsWith("--") || i + 1 >= args.length)
+			{
+				throw new IllegalArgumentException("Bad argument: " + args[i]);
+			}
+			if(!OPTION_NAMES.contains(args[i].substring(2)))
+			{
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+		return options;
+	}
+
+	private static String get(Map<String, String> options, String name, String defaultValue)
+	{
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+}
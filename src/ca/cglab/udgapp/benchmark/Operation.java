@@ -0,0 +1,224 @@
+package ca.cglab.udgapp.benchmark;
+
+import java.util.Random;
+
+import ca.cglab.udgapp.graphmodel.BreadthFirstSearch;
+import ca.cglab.udgapp.graphmodel.DynamicUnitDiskGraph;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// The steps of building and searching a graph that can be timed.
+// prepare() puts the graph in the state the step expects and is not timed,
+// measure() runs the step and returns something that depends on its result
+// so the JIT can't throw the work away.
+public enum Operation
+{
+	CREATE_VERTICES("createNewRandomVertices")
+	{
+		void prepare(Fixture fixture) { fixture.getGraph().removeAllVertices(); }
+		
+		int measure(Fixture fixture)
+		{
+			fixture.getGraph().createNewRandomVertices();
+			return fixture.getGraph().getVertexCount();
+		}
+		
+		// The next operation needs the edges back
+		void restore(Fixture fixture) { fixture.build(); }
+	},
+	CREATE_EDGES("createNewConnectedEdges")
+	{
+		void prepare(Fixture fixture) { fixture.getGraph().removeAllEdges(); }
+		
+		int measure(Fixture fixture)
+		{
+			fixture.getGraph().createNewConnectedEdges();
+			return fixture.getGraph().getNumEdges();
+		}
+		
+		void restore(Fixture fixture) { fixture.getGraph().determineIntersectingEdges(); }
+	},
+	INTERSECTING_EDGES("determineIntersectingEdges")
+	{
+		int measure(Fixture fixture)
+		{
+			fixture.getGraph().determineIntersectingEdges();
+			return fixture.getGraph().getNumIntersectingEdges();
+		}
+	},
+	SUPER_FREE_EDGES("determineSuperFreeEdges")
+	{
+		int measure(Fixture fixture)
+		{
+			fixture.getGraph().determineSuperFreeEdges();
+			return fixture.getGraph().getNumSuperFreeEdges();
+		}
+	},
+	COMPONENT_WITH("getConnectedComponentWith")
+	{
+		int measure(Fixture fixture)
+		{
+			// A different start vertex every time so all component sizes are covered
+			return fixture.getSearch().getConnectedComponentWith(fixture.nextStartVertex()).length;
+		}
+	},
+	LABEL_COMPONENTS("labelComponents")
+	{
+		int measure(Fixture fixture)
+		{
+			return fixture.labelComponents();
+		}
+	},
+	ALL_COMPONENTS("determineAllConnectedComponents")
+	{
+		int measure(Fixture fixture)
+		{
+			BreadthFirstSearch bfs = fixture.getSearch();
+			bfs.determineAllConnectedComponents();
+			return bfs.getNumVerticesinLargestComponent();
+		}
+	},
+	MOVE_VERTEX("moveVertex")
+	{
+		int measure(Fixture fixture)
+		{
+			return fixture.moveVertex();
+		}
+		
+		// The moves are only worth timing if they kept the graph right
+		void restore(Fixture fixture) { fixture.checkMovedGraph(); }
+	};
+	
+	private final String methodName;
+	
+	private Operation(String methodName)
+	{
+		this.methodName = methodName;
+	}
+	
+	void prepare(Fixture fixture) {}
+	abstract int measure(Fixture fixture);
+	// Undoes whatever prepare() took away, once the operation is done being measured
+	void restore(Fixture fixture) {}
+	
+	public String getMethodName() { return methodName; }
+	
+	// Accepts either the enum name or the method name, ignoring case
+	public static Operation parse(String name)
+	{
+		for(Operation operation : values())
+		{
+			if(operation.name().equalsIgnoreCase(name) || operation.methodName.equalsIgnoreCase(name))
+			{
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException("Unknown benchmark: " + name);
+	}
+	
+	// One fully built graph that the operations run on
+	static final class Fixture
+	{
+		private final UnitDiskGraph udg;
+		private final BreadthFirstSearch bfs;
+		private int nextStart;
+		// Filled by labelComponents(), sized for the largest graph seen so far
+		private int[] componentIds;
+		private int[] componentSizes;
+		// A copy of the graph that moveVertex() changes, made on its first call
+		private DynamicUnitDiskGraph dynamic;
+		private final Random random = new Random(1);
+		
+		Fixture(UnitDiskGraph udg)
+		{
+			this.udg = udg;
+			build();
+			bfs = new BreadthFirstSearch(udg);
+			componentIds = new int[0];
+			componentSizes = new int[0];
+		}
+		
+		void build()
+		{
+			udg.removeAllVertices();
+			udg.createNewRandomVertices();
+			udg.createNewConnectedEdges();
+			udg.determineIntersectingEdges();
+			dynamic = null;
+		}
+		
+		int nextStartVertex()
+		{
+			nextStart = (nextStart + 7919) % udg.getVertexCount();
+			return nextStart;
+		}
+		
+		// The arrays are only allocated when the graph outgrows them, so repeated runs allocate nothing
+		int labelComponents()
+		{
+			if(componentIds.length < udg.getVertexCount())
+			{
+				componentIds = new int[udg.getVertexCount()];
+				componentSizes = new int[udg.getVertexCount()];
+			}
+			return bfs.labelComponents(componentIds, componentSizes);
+		}
+		
+		// Moves a vertex to a random spot at most the radius away in each direction
+		int moveVertex()
+		{
+			if(dynamic == null)
+			{
+				dynamic = new DynamicUnitDiskGraph(udg);
+			}
+			int v = nextStartVertex();
+			double step = dynamic.getMaxDistance();
+			dynamic.moveVertex(v, nextCoordinate(dynamic.getX(v), step), nextCoordinate(dynamic.getY(v), step));
+			return dynamic.getNumIntersectingEdges() + dynamic.getNumSuperFreeEdges();
+		}
+		
+		// Somewhere within 'step' of 'coordinate' and inside the unit square
+		private double nextCoordinate(double coordinate, double step)
+		{
+			double low = Math.max(0, coordinate - step);
+			double high = Math.min(1, coordinate + step);
+			return low + random.nextDouble() * (high - low);
+		}
+		
+		// Builds the moved graph from scratch and throws if the edges, their classification
+		// or the components differ from what the moves kept up to date
+		void checkMovedGraph()
+		{
+			if(dynamic == null)
+			{
+				return;
+			}
+			UnitDiskGraph rebuilt = dynamic.toUnitDiskGraph();
+			rebuilt.determineIntersectingEdges();
+			check("edges", dynamic.getNumEdges(), rebuilt.getNumEdges());
+			check("intersecting edges", dynamic.getNumIntersectingEdges(), rebuilt.getNumIntersectingEdges());
+			check("super free edges", dynamic.getNumSuperFreeEdges(), rebuilt.getNumSuperFreeEdges());
+			
+			int n = rebuilt.getVertexCount();
+			int[] ids = new int[n];
+			int[] sizes = new int[n];
+			check("components", dynamic.getNumComponents(), new BreadthFirstSearch(rebuilt).labelComponents(ids, sizes));
+			// No vertex was removed, so the vertex ids are the indices in the rebuilt graph
+			for(int v = 0; v < n; v++)
+			{
+				check("vertices in the component of " + v, dynamic.getComponentSize(v), sizes[ids[v]]);
+			}
+		}
+		
+		private static void check(String what, int moved, int rebuilt)
+		{
+			if(moved != rebuilt)
+			{
+				throw new IllegalStateException("After the moves there are " + moved + " " + what
+												+ ", but the rebuilt graph has " + rebuilt);
+			}
+		}
+		
+		UnitDiskGraph getGraph() { return udg; }
+		BreadthFirstSearch getSearch() { return bfs; }
+	}
+}
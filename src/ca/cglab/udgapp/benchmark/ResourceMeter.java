@@ -0,0 +1,41 @@
+package ca.cglab.udgapp.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import ca.cglab.udgapp.metrics.ThreadAllocation;
+
+// Reads the bytes allocated by all live threads and the time spent in garbage collection,
+// so the difference between two readings gives what a piece of code cost.
+// Allocation counting needs the HotSpot extension of ThreadMXBean; without it -1 is returned.
+final class ResourceMeter
+{
+	// Total bytes allocated so far by the threads that are still alive.
+	// The pool threads used by the parallel engine stay alive, so their allocations are included.
+	long getAllocatedBytes()
+	{
+		return ThreadAllocation.getAllThreadsAllocatedBytes();
+	}
+	
+	long getGcCount()
+	{
+		long count = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+	
+	long getGcMillis()
+	{
+		long millis = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+		{
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+	
+	boolean canCountAllocations() { return ThreadAllocation.isSupported(); }
+}
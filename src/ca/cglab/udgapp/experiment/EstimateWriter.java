@@ -0,0 +1,66 @@
+package ca.cglab.udgapp.experiment;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Writes one row per parameter point of a ThresholdEstimator run, as CSV or as JSON lines.
+// Each property gets three columns: its estimated probability and the bounds of its interval.
+public final class EstimateWriter
+{
+	private final Writer out;
+	private final ResultWriter.Format format;
+	private final List<GraphProperty> properties;
+	private final String[] columns;
+	
+	public EstimateWriter(Writer out, ResultWriter.Format format, List<GraphProperty> properties)
+	{
+		this.out = out;
+		this.format = format;
+		this.properties = new ArrayList<GraphProperty>(properties);
+		
+		List<String> names = new ArrayList<String>();
+		String[] fixed = { "point", "n", "k", "a", "b", "epsilon", "r", "seed", "trials", "converged" };
+		for(String name : fixed)
+		{
+			names.add(name);
+		}
+		for(GraphProperty property : properties)
+		{
+			names.add(property.getLabel());
+			names.add(property.getLabel() + "_lower");
+			names.add(property.getLabel() + "_upper");
+		}
+		columns = names.toArray(new String[names.size()]);
+	}
+	
+	// Only CSV has a header
+	public synchronized void writeHeader() throws IOException
+	{
+		ResultWriter.writeHeader(out, format, columns);
+	}
+	
+	public synchronized void write(ThresholdEstimate estimate) throws IOException
+	{
+		TrialParameters p = estimate.getPoint();
+		List<Object> values = new ArrayList<Object>();
+		values.add(p.getTrialId());
+		values.add(p.getNumVertices());
+		values.add(p.getK());
+		values.add(p.getA());
+		values.add(p.getB());
+		values.add(p.getEpsilon());
+		values.add(p.getMaxDistance());
+		values.add(p.getSeed());
+		values.add(estimate.getNumTrials());
+		values.add(estimate.isConverged());
+		for(GraphProperty property : properties)
+		{
+			values.add(estimate.getProbability(property));
+			values.add(estimate.getLower(property));
+			values.add(estimate.getUpper(property));
+		}
+		ResultWriter.writeRow(out, format, columns, values.toArray());
+	}
+}
@@ -0,0 +1,359 @@
+package ca.cglab.udgapp.experiment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ca.cglab.udgapp.graphmodel.CancellationToken;
+import ca.cglab.udgapp.graphmodel.GraphSummary;
+import ca.cglab.udgapp.graphmodel.IntersectionCounter;
+import ca.cglab.udgapp.graphmodel.ProgressListener;
+import ca.cglab.udgapp.graphmodel.RadiusSweep;
+import ca.cglab.udgapp.graphmodel.RandomPoints;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// Runs a list of trials on a fixed number of worker threads and writes each result as soon as it is done.
+// Every trial builds its own graph on a single thread, so the workers keep all the cores busy.
+// cancel() stops the graphs being built and skips the trials that haven't started.
+public final class ExperimentRunner
+{
+	private final int numThreads;
+	private final ResultWriter writer;
+	private final CancellationToken token;
+	// Told how many trials are done, can be null
+	private ProgressListener progressListener;
+	private int numFinished;
+	// Whether the trials stream their edges instead of storing them
+	private boolean streaming;
+	// Whether the trials on the same vertices share one radius sweep
+	private boolean sweep;
+	// A saved graph whose vertices every trial uses instead of random ones, can be null
+	private File input;
+	// Where the vertices of every trial are saved before its edges are built, can be null
+	private File saveDirectory;
+	
+	public ExperimentRunner(int numThreads, ResultWriter writer)
+	{
+		if(numThreads < 1) throw new IllegalArgumentException("Need at least one thread");
+		this.numThreads = numThreads;
+		this.writer = writer;
+		this.token = new CancellationToken();
+	}
+	
+	// Can be called from any thread, for example a shutdown hook
+	public void cancel()
+	{
+		token.cancel();
+	}
+	
+	public void setProgressListener(ProgressListener listener)
+	{
+		progressListener = listener;
+	}
+	
+	// Runs the trials with runStreamingTrial() instead of runTrial()
+	public void setStreaming(boolean b)
+	{
+		streaming = b;
+	}
+	
+	// Runs the trials with the same n and seed, which have the same vertices, on one RadiusSweep
+	// from the smallest radius to the largest instead of building each graph from scratch.
+	// The pairs are found and sorted once, and each radius only adds the edges up to it.
+	// Can't be used with setStreaming(), the sweep keeps all its pairs.
+	public void setSweep(boolean b)
+	{
+		sweep = b;
+	}
+	
+	// Runs every trial on the vertices saved in the file instead of random ones, see UnitDiskGraph.save().
+	// Only the radius changes from trial to trial, the trials' n and seed should be the file's.
+	public void setInput(File file)
+	{
+		input = file;
+	}
+	
+	// Saves the vertices, radius and seed of every trial to "trial-<id>.udg" in the directory,
+	// so an odd trial can be rerun later with setInput() or UnitDiskGraph.load()
+	public void setSaveDirectory(File directory)
+	{
+		saveDirectory = directory;
+	}
+	
+	// Builds the cross product of all the parameter ranges, 'repetitions' times each.
+	// Each trial gets its own seed derived from the base seed and its trial id,
+	// unless deriveSeeds is false, in which case every trial uses the given seed as is.
+	public static List<TrialParameters> createTrials(int[] ns, int[] ks, double[] as, double[] bs,
+													 double[] epsilons, int repetitions,
+													 long seed, boolean deriveSeeds)
+	{
+		return createTrials(ns, ks, as, bs, epsilons, repetitions, seed, deriveSeeds, false);
+	}
+	
+	// Same as above, but with sharePointSets the derived seeds only depend on n and the repetition,
+	// so the trials that differ only in k, a, b or epsilon have the same vertices, see setSweep()
+	public static List<TrialParameters> createTrials(int[] ns, int[] ks, double[] as, double[] bs,
+													 double[] epsilons, int repetitions,
+													 long seed, boolean deriveSeeds, boolean sharePointSets)
+	{
+		List<TrialParameters> trials = new ArrayList<TrialParameters>();
+		for(int i = 0; i < ns.length; i++)
+		{
+			int n = ns[i];
+			for(int k : ks)
+			{
+				for(double a : as)
+				{
+					for(double b : bs)
+					{
+						for(double epsilon : epsilons)
+						{
+							for(int rep = 0; rep < repetitions; rep++)
+							{
+								int trialId = trials.size();
+								long stream = sharePointSets ? (long) i * repetitions + rep : trialId;
+								long trialSeed = deriveSeeds ? RandomPoints.deriveSeed(seed, stream) : seed;
+								trials.add(new TrialParameters(trialId, n, k, a, b, epsilon, rep, trialSeed));
+							}
+						}
+					}
+				}
+			}
+		}
+		return trials;
+	}
+	
+	// Throws a CancellationException once the trials that were running have stopped, if cancel() was called.
+	// The results of the trials that finished before that are written.
+	public void run(final List<TrialParameters> trials) throws IOException, InterruptedException
+	{
+		if(sweep && streaming) throw new IllegalStateException("A sweep keeps its pairs, so it cannot stream them");
+		// The queue is bounded so huge sweeps don't queue up millions of tasks at once.
+		// When it is full the submitting thread runs the trial itself.
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(numThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try
+		{
+			writer.writeHeader();
+			for(final List<TrialParameters> group : groupTrials(trials))
+			{
+				if(token.isCancelled())
+				{
+					break;
+				}
+				futures.add(executor.submit(new Runnable()
+				{
+					public void run()
+					{
+						try
+						{
+							if(sweep)
+							{
+								runSweep(group, trials.size());
+							}
+							else
+							{
+								writer.write(measure(group.get(0)));
+								trialFinished(trials.size());
+							}
+						}
+						catch(CancellationException e)
+						{
+							// The trial is dropped, run() reports the cancellation at the end
+						}
+						catch(IOException e)
+						{
+							throw new RuntimeException(e);
+						}
+					}
+				}));
+			}
+			for(Future<?> future : futures)
+			{
+				future.get();
+			}
+			if(token.isCancelled())
+			{
+				throw new CancellationException("Cancelled after " + numFinished + " of " + trials.size() + " trials");
+			}
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause.getCause() instanceof IOException) throw (IOException) cause.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	private synchronized void trialFinished(int numTrials)
+	{
+		numFinished++;
+		if(progressListener != null)
+		{
+			progressListener.progressMade("trials", numFinished, numTrials);
+		}
+	}
+	
+	// With setSweep() the trials with the same vertices go in one group, in the order they first appear.
+	// Otherwise every trial is a group of its own.
+	private List<List<TrialParameters>> groupTrials(List<TrialParameters> trials)
+	{
+		List<List<TrialParameters>> groups = new ArrayList<List<TrialParameters>>();
+		Map<List<Long>, List<TrialParameters>> groupsByVertices = new HashMap<List<Long>, List<TrialParameters>>();
+		for(TrialParameters trial : trials)
+		{
+			List<Long> vertices = Arrays.asList((long) trial.getNumVertices(), trial.getSeed());
+			List<TrialParameters> group = sweep ? groupsByVertices.get(vertices) : null;
+			if(group == null)
+			{
+				group = new ArrayList<TrialParameters>();
+				groups.add(group);
+				groupsByVertices.put(vertices, group);
+			}
+			group.add(trial);
+		}
+		return groups;
+	}
+	
+	// Runs one trial of run() on the vertices from createVertices()
+	private TrialResult measure(TrialParameters trial) throws IOException
+	{
+		long start = System.nanoTime();
+		UnitDiskGraph udg = createVertices(trial);
+		save(udg, trial);
+		return streaming ? runStreamingTrial(trial, udg, start) : runTrial(trial, udg, start);
+	}
+	
+	// Runs a group of trials on the same vertices with one sweep up to the largest of their radii and
+	// writes each result as soon as its radius is reached. Each trial is timed from the end of the one
+	// before, so the first one also has the time it took to make the vertices and the sweep.
+	private void runSweep(List<TrialParameters> group, int numTrials) throws IOException
+	{
+		long start = System.nanoTime();
+		List<TrialParameters> byRadius = new ArrayList<TrialParameters>(group);
+		Collections.sort(byRadius, new Comparator<TrialParameters>()
+		{
+			public int compare(TrialParameters first, TrialParameters second)
+			{
+				return Double.compare(first.getMaxDistance(), second.getMaxDistance());
+			}
+		});
+		UnitDiskGraph udg = createVertices(byRadius.get(0));
+		RadiusSweep radiusSweep = udg.createRadiusSweep(byRadius.get(byRadius.size() - 1).getMaxDistance());
+		radiusSweep.setCancellationToken(token);
+		for(TrialParameters trial : byRadius)
+		{
+			save(udg, trial);
+			radiusSweep.advanceTo(trial.getMaxDistance());
+			int numSuperFreeEdges = radiusSweep.countSuperFreeEdges();
+			GraphSummary summary = GraphSummary.of(radiusSweep, GraphSummary.DEFAULT_LENGTH_BINS);
+			
+			long end = System.nanoTime();
+			writer.write(new TrialResult(trial, radiusSweep.getNumIntersectingEdges(), radiusSweep.getNumFreeEdges(),
+					numSuperFreeEdges, summary, (end - start) / 1000000, udg.getMetrics().snapshot()));
+			trialFinished(numTrials);
+			start = end;
+		}
+	}
+	
+	// The input file's vertices if there is one and random ones otherwise
+	private UnitDiskGraph createVertices(TrialParameters trial) throws IOException
+	{
+		UnitDiskGraph udg;
+		if(input != null)
+		{
+			// The file may have the edges for its own radius, they are built again for the trial's
+			udg = UnitDiskGraph.load(input);
+			udg.removeAllEdges();
+			udg.setCancellationToken(token);
+		}
+		else
+		{
+			udg = createRandomVertices(trial, token);
+		}
+		return udg;
+	}
+	
+	// Saves the vertices with the trial's radius if there is a save directory
+	private void save(UnitDiskGraph udg, TrialParameters trial) throws IOException
+	{
+		if(saveDirectory != null)
+		{
+			udg.setMaxDistance(trial.getMaxDistance());
+			udg.save(new File(saveDirectory, "trial-" + trial.getTrialId() + ".udg"), false);
+		}
+	}
+	
+	private static UnitDiskGraph createRandomVertices(TrialParameters trial, CancellationToken token)
+	{
+		UnitDiskGraph udg = new UnitDiskGraph(trial.getNumVertices(), trial.getSeed());
+		udg.setCancellationToken(token);
+		udg.createNewRandomVertices();
+		return udg;
+	}
+	
+	// Builds the graph for one trial and measures it
+	public static TrialResult runTrial(TrialParameters trial)
+	{
+		return runTrial(trial, null);
+	}
+	
+	// Same as above, but the graph stops with a CancellationException once the token is cancelled
+	public static TrialResult runTrial(TrialParameters trial, CancellationToken token)
+	{
+		long start = System.nanoTime();
+		return runTrial(trial, createRandomVertices(trial, token), start);
+	}
+	
+	// Builds the edges of a graph that has its vertices and measures it, timed from 'start'
+	private static TrialResult runTrial(TrialParameters trial, UnitDiskGraph udg, long start)
+	{
+		udg.setMaxDistance(trial.getMaxDistance());
+		udg.createNewConnectedEdges();
+		udg.determineIntersectingEdges();
+		GraphSummary summary = GraphSummary.of(udg, GraphSummary.DEFAULT_LENGTH_BINS);
+		
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		return new TrialResult(trial, udg.getNumIntersectingEdges(), udg.getNumFreeEdges(),
+				udg.getNumSuperFreeEdges(), summary, elapsedMillis, udg.getMetrics().snapshot());
+	}
+	
+	// Measures the same statistics as runTrial() without ever storing the edges, so the memory used
+	// only grows with the number of vertices. The edges are found on a single thread either way.
+	public static TrialResult runStreamingTrial(TrialParameters trial, CancellationToken token)
+	{
+		long start = System.nanoTime();
+		return runStreamingTrial(trial, createRandomVertices(trial, token), start);
+	}
+	
+	private static TrialResult runStreamingTrial(TrialParameters trial, UnitDiskGraph udg, long start)
+	{
+		udg.setMaxDistance(trial.getMaxDistance());
+		GraphSummary.Collector summary = new GraphSummary.Collector(udg.getVertexCount(),
+				GraphSummary.DEFAULT_LENGTH_BINS, udg.getMaxDistance());
+		IntersectionCounter intersections = new IntersectionCounter(udg);
+		udg.streamNewConnectedEdges(summary, intersections);
+		
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		return new TrialResult(trial, intersections.getNumIntersectingEdges(), intersections.getNumFreeEdges(),
+				intersections.getNumSuperFreeEdges(), summary.getSummary(), elapsedMillis, udg.getMetrics().snapshot());
+	}
+}
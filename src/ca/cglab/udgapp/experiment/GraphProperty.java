@@ -0,0 +1,60 @@
+package ca.cglab.udgapp.experiment;
+
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// The yes or no questions about a random graph whose probability the estimator measures.
+// holds() only needs the vertices and the distance threshold: it uses the graph's short-circuiting
+// searches, which stop at the first witness, instead of building and counting every edge.
+// On a fixed set of points each property is monotone in the radius: growing the radius only
+// adds edges, so once it holds it keeps holding, or for PLANE, once it fails it keeps failing.
+public enum GraphProperty
+{
+	// There is a component with at least k vertices
+	COMPONENT_AT_LEAST_K("component_at_least_k", true)
+	{
+		boolean holds(UnitDiskGraph udg, int k) { return udg.hasComponentOfSizeAtLeast(k); }
+	},
+	// Some pair of edges cross
+	INTERSECTING("intersecting", true)
+	{
+		boolean holds(UnitDiskGraph udg, int k) { return udg.hasIntersectingEdge(); }
+	},
+	// No pair of edges cross
+	PLANE("plane", false)
+	{
+		boolean holds(UnitDiskGraph udg, int k) { return !udg.hasIntersectingEdge(); }
+		GraphProperty getComplementOf() { return INTERSECTING; }
+	};
+	
+	private final String label;
+	private final boolean increasingInRadius;
+	
+	private GraphProperty(String label, boolean increasingInRadius)
+	{
+		this.label = label;
+		this.increasingInRadius = increasingInRadius;
+	}
+	
+	abstract boolean holds(UnitDiskGraph udg, int k);
+	
+	// The property this one is the opposite of, or null. A trial that checks both only searches once.
+	GraphProperty getComplementOf() { return null; }
+	
+	// Accepts either the enum name or the label, ignoring case
+	public static GraphProperty parse(String name)
+	{
+		for(GraphProperty property : values())
+		{
+			if(property.name().equalsIgnoreCase(name) || property.label.equalsIgnoreCase(name))
+			{
+				return property;
+			}
+		}
+		throw new IllegalArgumentException("Unknown property: " + name);
+	}
+	
+	// Getters
+	public String getLabel() { return label; }
+	// True if the property holds more often as the radius grows
+	public boolean isIncreasingInRadius() { return increasingInRadius; }
+}
@@ -0,0 +1,79 @@
+package ca.cglab.udgapp.experiment;
+
+import java.util.ArrayList;
+
+// A list of values for one experiment parameter, parsed from the command line.
+// Accepts a single value ("0.5"), a list ("100,1000,10000")
+// or an inclusive range with a step ("-0.1:0.1:0.05").
+public final class ParameterRange
+{
+	private final double[] values;
+	
+	private ParameterRange(double[] values)
+	{
+		this.values = values;
+	}
+	
+	public static ParameterRange parse(String text)
+	{
+		ArrayList<Double> list = new ArrayList<Double>();
+		for(String part : text.split(","))
+		{
+			String[] bounds = part.trim().split(":");
+			if(bounds.length == 1)
+			{
+				list.add(Double.parseDouble(bounds[0]));
+			}
+			else if(bounds.length == 3)
+			{
+				double start = Double.parseDouble(bounds[0]);
+				double end = Double.parseDouble(bounds[1]);
+				double step = Double.parseDouble(bounds[2]);
+				if(step <= 0 || end < start)
+				{
+					throw new IllegalArgumentException("Bad range: " + part);
+				}
+				// The small tolerance keeps 'end' in the range despite rounding in the step
+				long count = (long) Math.floor((end - start) / step + 1e-9) + 1;
+				for(long i = 0; i < count; i++)
+				{
+					list.add(start + i * step);
+				}
+			}
+			else
+			{
+				throw new IllegalArgumentException("Bad range: " + part);
+			}
+		}
+		
+		double[] values = new double[list.size()];
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = list.get(i);
+		}
+		return new ParameterRange(values);
+	}
+	
+	public static ParameterRange of(double value)
+	{
+		return new ParameterRange(new double[] { value });
+	}
+	
+	// Returns the values as whole numbers, failing if any of them isn't one
+	public int[] toIntValues()
+	{
+		int[] ints = new int[values.length];
+		for(int i = 0; i < values.length; i++)
+		{
+			if(values[i] != Math.rint(values[i]) || Math.abs(values[i]) > Integer.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("Not a whole number: " + values[i]);
+			}
+			ints[i] = (int) values[i];
+		}
+		return ints;
+	}
+	
+	public double[] getValues() { return values.clone(); }
+	public int size() { return values.length; }
+}
@@ -0,0 +1,58 @@
+package ca.cglab.udgapp.experiment;
+
+// The fraction of trials in which something happened, with its Wilson score interval.
+// Unlike the normal approximation the Wilson interval stays inside [0, 1] and is still
+// sensible when nothing or everything happened, which is common far from a threshold.
+public final class Proportion
+{
+	private final long successes;
+	private final long trials;
+	
+	public Proportion(long successes, long trials)
+	{
+		if(successes < 0 || successes > trials) throw new IllegalArgumentException("Need 0 <= successes <= trials");
+		this.successes = successes;
+		this.trials = trials;
+	}
+	
+	public double getEstimate()
+	{
+		return trials == 0 ? 0.5 : (double) successes / trials;
+	}
+	
+	// The bounds of the interval for the normal quantile z, for example 1.96 for 95% confidence
+	public double getLower(double z)
+	{
+		return Math.max(0, getCenter(z) - getHalfWidth(z));
+	}
+	
+	public double getUpper(double z)
+	{
+		return Math.min(1, getCenter(z) + getHalfWidth(z));
+	}
+	
+	public double getHalfWidth(double z)
+	{
+		if(trials == 0)
+		{
+			return 0.5;
+		}
+		double p = getEstimate();
+		double z2 = z * z;
+		return z / (1 + z2 / trials) * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials));
+	}
+	
+	private double getCenter(double z)
+	{
+		if(trials == 0)
+		{
+			return 0.5;
+		}
+		double z2 = z * z;
+		return (getEstimate() + z2 / (2.0 * trials)) / (1 + z2 / trials);
+	}
+	
+	// Getters
+	public long getSuccesses() { return successes; }
+	public long getTrials() { return trials; }
+}
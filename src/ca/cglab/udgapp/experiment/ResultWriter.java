@@ -0,0 +1,116 @@
+package ca.cglab.udgapp.experiment;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import ca.cglab.udgapp.graphmodel.GraphSummary;
+import ca.cglab.udgapp.metrics.MetricsSnapshot;
+import ca.cglab.udgapp.metrics.Stage;
+
+// Streams one row per trial as CSV or as JSON lines.
+// Rows are flushed as soon as they are written so partial sweeps are never lost.
+public final class ResultWriter
+{
+	public enum Format { CSV, JSONL }
+	
+	private static final String[] COLUMNS =
+	{
+		"trial", "n", "k", "a", "b", "epsilon", "r", "repetition", "seed",
+		"edges", "intersecting", "free", "super_free",
+		"components", "largest_component", "components_at_least_k",
+		"isolated", "max_degree", "mean_degree", "mean_edge_length", "millis",
+		"vertex_ms", "edge_ms", "intersection_ms", "super_free_ms", "component_ms",
+		"pair_comparisons", "intersection_tests", "allocated_bytes", "peak_edges"
+	};
+	
+	private final Writer out;
+	private final Format format;
+	
+	public ResultWriter(Writer out, Format format)
+	{
+		this.out = out;
+		this.format = format;
+	}
+	
+	// Only CSV has a header
+	public synchronized void writeHeader() throws IOException
+	{
+		writeHeader(out, format, COLUMNS);
+	}
+	
+	public synchronized void write(TrialResult result) throws IOException
+	{
+		writeRow(out, format, COLUMNS, valuesOf(result));
+	}
+	
+	// Shared with the other writers in this package
+	static void writeHeader(Writer out, Format format, String[] columns) throws IOException
+	{
+		if(format == Format.CSV)
+		{
+			StringBuilder line = new StringBuilder();
+			for(int i = 0; i < columns.length; i++)
+			{
+				if(i > 0) line.append(',');
+				line.append(columns[i]);
+			}
+			out.write(line.append('\n').toString());
+			out.flush();
+		}
+	}
+	
+	// Strings are quoted in JSON, everything else is written as it is
+	static void writeRow(Writer out, Format format, String[] columns, Object[] values) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		if(format == Format.CSV)
+		{
+			for(int i = 0; i < values.length; i++)
+			{
+				if(i > 0) line.append(',');
+				line.append(values[i]);
+			}
+		}
+		else
+		{
+			line.append('{');
+			for(int i = 0; i < values.length; i++)
+			{
+				if(i > 0) line.append(',');
+				line.append('"').append(columns[i]).append("\":");
+				if(values[i] instanceof String)
+				{
+					line.append('"').append(values[i]).append('"');
+				}
+				else
+				{
+					line.append(values[i]);
+				}
+			}
+			line.append('}');
+		}
+		out.write(line.append('\n').toString());
+		out.flush();
+	}
+	
+	private static Object[] valuesOf(TrialResult result)
+	{
+		TrialParameters p = result.getParameters();
+		MetricsSnapshot m = result.getMetrics();
+		GraphSummary s = result.getSummary();
+		return new Object[]
+		{
+			p.getTrialId(), p.getNumVertices(), p.getK(), p.getA(), p.getB(), p.getEpsilon(),
+			p.getMaxDistance(), p.getRepetition(), p.getSeed(),
+			result.getNumEdges(), result.getNumIntersectingEdges(), result.getNumFreeEdges(),
+			result.getNumSuperFreeEdges(), result.getNumComponents(),
+			result.getNumVerticesInLargestComponent(), result.getNumComponentsWithAtLeastKVertices(),
+			s.getNumIsolatedVertices(), s.getMaxDegree(), s.getMeanDegree(), s.getMeanEdgeLength(),
+			result.getElapsedMillis(),
+			m.getWallMillis(Stage.VERTEX_GENERATION), m.getWallMillis(Stage.EDGE_BUILD),
+			m.getWallMillis(Stage.INTERSECTION_TEST), m.getWallMillis(Stage.SUPER_FREE_TEST),
+			m.getWallMillis(Stage.COMPONENT_SEARCH),
+			m.getPairComparisons(), m.getIntersectionTests(), m.getTotalAllocatedBytes(), m.getPeakEdgeCount()
+		};
+	}
+}
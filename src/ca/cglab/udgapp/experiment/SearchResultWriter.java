@@ -0,0 +1,41 @@
+package ca.cglab.udgapp.experiment;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes one row per ThresholdSearch, as CSV or as JSON lines
+public final class SearchResultWriter
+{
+	private static final String[] COLUMNS =
+	{
+		"n", "k", "a", "b", "property", "epsilon", "r", "epsilon_low", "epsilon_high",
+		"probability_low", "probability_high", "steps", "point_sets", "graphs_checked", "seed"
+	};
+	
+	private final Writer out;
+	private final ResultWriter.Format format;
+	
+	public SearchResultWriter(Writer out, ResultWriter.Format format)
+	{
+		this.out = out;
+		this.format = format;
+	}
+	
+	// Only CSV has a header
+	public synchronized void writeHeader() throws IOException
+	{
+		ResultWriter.writeHeader(out, format, COLUMNS);
+	}
+	
+	public synchronized void write(ThresholdSearchResult result) throws IOException
+	{
+		TrialParameters p = result.getParameters();
+		ResultWriter.writeRow(out, format, COLUMNS, new Object[]
+		{
+			p.getNumVertices(), p.getK(), p.getA(), p.getB(), result.getProperty().getLabel(),
+			result.getEpsilon(), result.getRadius(), result.getEpsilonLow(), result.getEpsilonHigh(),
+			result.getProbabilityLow(), result.getProbabilityHigh(), result.getStepEpsilons().size(),
+			result.getNumPointSets(), result.getNumGraphsChecked(), p.getSeed()
+		});
+	}
+}
@@ -0,0 +1,46 @@
+package ca.cglab.udgapp.experiment;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+// How often each property held over the trials run at one parameter point
+public final class ThresholdEstimate
+{
+	private final TrialParameters point;
+	private final Map<GraphProperty, Proportion> proportions;
+	private final double z;
+	// False if the trial limit was reached before every interval was tight enough
+	private final boolean converged;
+	
+	public ThresholdEstimate(TrialParameters point, Map<GraphProperty, Proportion> proportions, double z,
+							 boolean converged)
+	{
+		this.point = point;
+		this.proportions = Collections.unmodifiableMap(new EnumMap<GraphProperty, Proportion>(proportions));
+		this.z = z;
+		this.converged = converged;
+	}
+	
+	public long getNumTrials()
+	{
+		return proportions.isEmpty() ? 0 : proportions.values().iterator().next().getTrials();
+	}
+	
+	public double getProbability(GraphProperty property) { return get(property).getEstimate(); }
+	public double getLower(GraphProperty property) { return get(property).getLower(z); }
+	public double getUpper(GraphProperty property) { return get(property).getUpper(z); }
+	
+	public Proportion get(GraphProperty property)
+	{
+		Proportion proportion = proportions.get(property);
+		if(proportion == null) throw new IllegalArgumentException(property + " was not estimated");
+		return proportion;
+	}
+	
+	// Getters
+	public TrialParameters getPoint() { return point; }
+	public Map<GraphProperty, Proportion> getProportions() { return proportions; }
+	public double getZ() { return z; }
+	public boolean isConverged() { return converged; }
+}
@@ -0,0 +1,241 @@
+package ca.cglab.udgapp.experiment;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.cglab.udgapp.graphmodel.CancellationToken;
+import ca.cglab.udgapp.graphmodel.ProgressListener;
+import ca.cglab.udgapp.graphmodel.RandomPoints;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// Estimates the probability of each property at a list of parameter points by running random
+// trials until the confidence interval of every property is narrow enough.
+// The trials run in rounds on a fixed number of worker threads. Every point gets minTrials
+// trials in the first round and then batchSize more per round, but only while one of its
+// intervals is still wider than the target, so points far from a threshold, where the answer
+// is almost always the same, drop out early and the rest of the trials go to the uncertain ones.
+// Trial t at a point uses the seed derived from the point's seed and t, so a run can be repeated.
+public final class ThresholdEstimator
+{
+	private final int numThreads;
+	private final List<GraphProperty> properties;
+	private final CancellationToken token;
+	// Told how many points are done, can be null
+	private ProgressListener progressListener;
+	
+	// The normal quantile of the intervals, 1.96 for 95% confidence
+	private double z = 1.96;
+	// A point is done once every interval is at most this wide on each side
+	private double targetHalfWidth = 0.05;
+	private int minTrials = 30;
+	private int maxTrials = 10000;
+	private int batchSize = 50;
+	
+	public ThresholdEstimator(int numThreads, List<GraphProperty> properties)
+	{
+		if(numThreads < 1) throw new IllegalArgumentException("Need at least one thread");
+		if(properties.isEmpty()) throw new IllegalArgumentException("Need at least one property");
+		this.numThreads = numThreads;
+		this.properties = new ArrayList<GraphProperty>(properties);
+		this.token = new CancellationToken();
+	}
+	
+	// Can be called from any thread, estimate() then throws a CancellationException
+	public void cancel()
+	{
+		token.cancel();
+	}
+	
+	public void setProgressListener(ProgressListener listener)
+	{
+		progressListener = listener;
+	}
+	
+	// Returns one estimate per point, in the same order
+	public List<ThresholdEstimate> estimate(List<TrialParameters> points) throws InterruptedException
+	{
+		final int numPoints = points.size();
+		long[][] successes = new long[numPoints][properties.size()];
+		int[] numTrials = new int[numPoints];
+		boolean[] converged = new boolean[numPoints];
+		
+		List<Integer> open = new ArrayList<Integer>();
+		for(int p = 0; p < numPoints; p++)
+		{
+			open.add(p);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			while(!open.isEmpty())
+			{
+				token.throwIfCancelled();
+				
+				// Queue this round's trials for every point that is still open
+				List<Future<boolean[]>> futures = new ArrayList<Future<boolean[]>>();
+				List<Integer> owners = new ArrayList<Integer>();
+				for(int p : open)
+				{
+					int count = numTrials[p] < minTrials ? minTrials - numTrials[p] : batchSize;
+					count = Math.min(count, maxTrials - numTrials[p]);
+					for(int t = numTrials[p], l = numTrials[p] + count; t < l; t++)
+					{
+						futures.add(executor.submit(createTrial(points.get(p), t)));
+						owners.add(p);
+					}
+					numTrials[p] += count;
+				}
+				
+				for(int i = 0; i < futures.size(); i++)
+				{
+					boolean[] holds = getResult(futures.get(i));
+					for(int q = 0; q < holds.length; q++)
+					{
+						if(holds[q])
+						{
+							successes[owners.get(i)][q]++;
+						}
+					}
+				}
+				
+				List<Integer> stillOpen = new ArrayList<Integer>();
+				for(int p : open)
+				{
+					converged[p] = isTightEnough(successes[p], numTrials[p]);
+					if(!converged[p] && numTrials[p] < maxTrials)
+					{
+						stillOpen.add(p);
+					}
+				}
+				open = stillOpen;
+				if(progressListener != null)
+				{
+					progressListener.progressMade("points", numPoints - open.size(), numPoints);
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		
+		List<ThresholdEstimate> estimates = new ArrayList<ThresholdEstimate>(numPoints);
+		for(int p = 0; p < numPoints; p++)
+		{
+			Map<GraphProperty, Proportion> proportions = new EnumMap<GraphProperty, Proportion>(GraphProperty.class);
+			for(int q = 0; q < properties.size(); q++)
+			{
+				proportions.put(properties.get(q), new Proportion(successes[p][q], numTrials[p]));
+			}
+			estimates.add(new ThresholdEstimate(points.get(p), proportions, z, converged[p]));
+		}
+		return estimates;
+	}
+	
+	private boolean isTightEnough(long[] successes, int numTrials)
+	{
+		for(long s : successes)
+		{
+			if(new Proportion(s, numTrials).getHalfWidth(z) > targetHalfWidth)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private Callable<boolean[]> createTrial(final TrialParameters point, final int trial)
+	{
+		return new Callable<boolean[]>()
+		{
+			public boolean[] call()
+			{
+				return runTrial(point, RandomPoints.deriveSeed(point.getSeed(), trial), properties, token);
+			}
+		};
+	}
+	
+	private static boolean[] getResult(Future<boolean[]> future) throws InterruptedException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch(ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if(cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	// Builds one graph at the point with the given seed and checks each property on it.
+	// Throws a CancellationException if the token is cancelled while the graph is being built.
+	public static boolean[] runTrial(TrialParameters point, long seed, List<GraphProperty> properties,
+									 CancellationToken token)
+	{
+		UnitDiskGraph udg = new UnitDiskGraph(point.getNumVertices(), seed);
+		udg.setCancellationToken(token);
+		udg.createNewRandomVertices();
+		udg.setMaxDistance(point.getMaxDistance());
+		
+		// The properties are checked straight from the vertices, no edges are built.
+		// Each search runs at most once, a complement is read off the property it is the opposite of.
+		Map<GraphProperty, Boolean> found = new EnumMap<GraphProperty, Boolean>(GraphProperty.class);
+		boolean[] holds = new boolean[properties.size()];
+		for(int q = 0; q < holds.length; q++)
+		{
+			GraphProperty property = properties.get(q);
+			GraphProperty complement = property.getComplementOf();
+			GraphProperty searched = complement != null ? complement : property;
+			Boolean value = found.get(searched);
+			if(value == null)
+			{
+				value = searched.holds(udg, point.getK());
+				found.put(searched, value);
+			}
+			holds[q] = complement != null ? !value : value;
+		}
+		return holds;
+	}
+	
+	// Setters
+	public void setZ(double value)
+	{
+		if(value <= 0) throw new IllegalArgumentException("z must be positive");
+		z = value;
+	}
+	
+	public void setTargetHalfWidth(double value)
+	{
+		if(value <= 0 || value >= 0.5) throw new IllegalArgumentException("The half width must be between 0 and 0.5");
+		targetHalfWidth = value;
+	}
+	
+	public void setTrialLimits(int min, int max)
+	{
+		if(min < 1 || max < min) throw new IllegalArgumentException("Need 1 <= min trials <= max trials");
+		minTrials = min;
+		maxTrials = max;
+	}
+	
+	public void setBatchSize(int value)
+	{
+		if(value < 1) throw new IllegalArgumentException("The batch size must be at least 1");
+		batchSize = value;
+	}
+	
+	// Getters
+	public List<GraphProperty> getProperties() { return properties; }
+	public double getZ() { return z; }
+	public double getTargetHalfWidth() { return targetHalfWidth; }
+}
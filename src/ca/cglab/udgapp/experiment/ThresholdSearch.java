@@ -0,0 +1,207 @@
+package ca.cglab.udgapp.experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.cglab.udgapp.graphmodel.CancellationToken;
+import ca.cglab.udgapp.graphmodel.ProgressListener;
+import ca.cglab.udgapp.graphmodel.RandomPoints;
+import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
+
+// Finds the epsilon at which a property holds in half of the random graphs, for one n, k, a and b,
+// by bisecting epsilon, which is bisecting the radius on a log scale.
+// Every step uses the same point sets: each one is generated once and then only checked again
+// at the new radius. Each property is monotone in the radius on a fixed point set, so the fraction
+// of point sets with the property is monotone in epsilon too and the noise can't send the bisection
+// the wrong way. It converges to the median of the point sets' own thresholds.
+// The point sets are kept for the whole search, which takes 16 bytes per vertex per point set.
+// No edges are ever stored, the properties are checked straight from the points.
+public final class ThresholdSearch
+{
+	private final int numThreads;
+	private final GraphProperty property;
+	private final CancellationToken token;
+	// Told how many bisection steps are done, can be null
+	private ProgressListener progressListener;
+	
+	private int numPointSets = 64;
+	// The search stops once the bracket around the crossing is at most this wide
+	private double tolerance = 0.001;
+	private int maxSteps = 40;
+	
+	public ThresholdSearch(int numThreads, GraphProperty property)
+	{
+		if(numThreads < 1) throw new IllegalArgumentException("Need at least one thread");
+		this.numThreads = numThreads;
+		this.property = property;
+		this.token = new CancellationToken();
+	}
+	
+	// Can be called from any thread, search() then throws a CancellationException
+	public void cancel()
+	{
+		token.cancel();
+	}
+	
+	public void setProgressListener(ProgressListener listener)
+	{
+		progressListener = listener;
+	}
+	
+	// Looks for the crossing between epsilonLow and epsilonHigh. The radius is larger at epsilonLow,
+	// so an increasing property has to hold in at least half of the point sets there and in less than
+	// half at epsilonHigh, the other way around for a decreasing one.
+	// Throws an IllegalStateException if the crossing isn't between the two.
+	public ThresholdSearchResult search(int n, int k, double a, double b, double epsilonLow, double epsilonHigh,
+										long seed) throws InterruptedException
+	{
+		if(epsilonLow >= epsilonHigh) throw new IllegalArgumentException("Need epsilonLow < epsilonHigh");
+		final TrialParameters base = new TrialParameters(0, n, k, a, b, 0, 0, seed);
+		final UnitDiskGraph[] graphs = new UnitDiskGraph[numPointSets];
+		List<Double> stepEpsilons = new ArrayList<Double>();
+		List<Double> stepProbabilities = new ArrayList<Double>();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			// The two ends, then one step per halving of the bracket
+			double halvings = Math.ceil(Math.log((epsilonHigh - epsilonLow) / tolerance) / Math.log(2));
+			int totalSteps = 2 + (int) Math.max(0, Math.min(maxSteps, halvings));
+			double low = epsilonLow;
+			double high = epsilonHigh;
+			double probabilityLow = evaluate(executor, graphs, base, low);
+			record(stepEpsilons, stepProbabilities, low, probabilityLow, totalSteps);
+			double probabilityHigh = evaluate(executor, graphs, base, high);
+			record(stepEpsilons, stepProbabilities, high, probabilityHigh, totalSteps);
+			if(!isOnLargeSide(probabilityLow) || isOnLargeSide(probabilityHigh))
+			{
+				throw new IllegalStateException("The probability of " + property.getLabel() + " is " + probabilityLow
+						+ " at epsilon = " + low + " and " + probabilityHigh + " at epsilon = " + high
+						+ ", so it doesn't cross 50% in between");
+			}
+			
+			for(int step = 0; step < maxSteps && high - low > tolerance; step++)
+			{
+				double middle = (low + high) / 2;
+				double probability = evaluate(executor, graphs, base, middle);
+				record(stepEpsilons, stepProbabilities, middle, probability, totalSteps);
+				if(isOnLargeSide(probability))
+				{
+					low = middle;
+					probabilityLow = probability;
+				}
+				else
+				{
+					high = middle;
+					probabilityHigh = probability;
+				}
+			}
+			return new ThresholdSearchResult(base, property, numPointSets, low, high, probabilityLow, probabilityHigh,
+											 stepEpsilons, stepProbabilities);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	// True if the probability is what the property looks like at the larger radii
+	private boolean isOnLargeSide(double probability)
+	{
+		return property.isIncreasingInRadius() ? probability >= 0.5 : probability < 0.5;
+	}
+	
+	private void record(List<Double> epsilons, List<Double> probabilities, double epsilon, double probability,
+						int totalSteps)
+	{
+		epsilons.add(epsilon);
+		probabilities.add(probability);
+		if(progressListener != null)
+		{
+			progressListener.progressMade("steps", epsilons.size(), Math.max(totalSteps, epsilons.size()));
+		}
+	}
+	
+	// The fraction of the point sets where the property holds at the given epsilon
+	private double evaluate(ExecutorService executor, final UnitDiskGraph[] graphs, TrialParameters base,
+							double epsilon) throws InterruptedException
+	{
+		token.throwIfCancelled();
+		final TrialParameters point = new TrialParameters(0, base.getNumVertices(), base.getK(), base.getA(),
+														  base.getB(), epsilon, 0, base.getSeed());
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for(int i = 0; i < graphs.length; i++)
+		{
+			final int index = i;
+			futures.add(executor.submit(new Callable<Boolean>()
+			{
+				public Boolean call()
+				{
+					// Each task only touches its own graph
+					if(graphs[index] == null)
+					{
+						graphs[index] = new UnitDiskGraph(point.getNumVertices(),
+														  RandomPoints.deriveSeed(point.getSeed(), index));
+						graphs[index].setCancellationToken(token);
+						graphs[index].createNewRandomVertices();
+					}
+					return holds(graphs[index], point);
+				}
+			}));
+		}
+		
+		int count = 0;
+		for(Future<Boolean> future : futures)
+		{
+			try
+			{
+				if(future.get())
+				{
+					count++;
+				}
+			}
+			catch(ExecutionException e)
+			{
+				Throwable cause = e.getCause();
+				if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+				if(cause instanceof Error) throw (Error) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		return (double) count / graphs.length;
+	}
+	
+	private boolean holds(UnitDiskGraph udg, TrialParameters point)
+	{
+		udg.setMaxDistance(point.getMaxDistance());
+		return property.holds(udg, point.getK());
+	}
+	
+	// Setters
+	public void setNumPointSets(int value)
+	{
+		if(value < 1) throw new IllegalArgumentException("Need at least one point set");
+		numPointSets = value;
+	}
+	
+	public void setTolerance(double value)
+	{
+		if(value <= 0) throw new IllegalArgumentException("The tolerance must be positive");
+		tolerance = value;
+	}
+	
+	public void setMaxSteps(int value)
+	{
+		if(value < 0) throw new IllegalArgumentException("The number of steps can't be negative");
+		maxSteps = value;
+	}
+	
+	// Getters
+	public GraphProperty getProperty() { return property; }
+	public int getNumPointSets() { return numPointSets; }
+}
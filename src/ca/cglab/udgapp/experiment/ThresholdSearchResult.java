@@ -0,0 +1,65 @@
+package ca.cglab.udgapp.experiment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Where a ThresholdSearch found the property's probability to cross 50%.
+// The crossing is between getEpsilonLow() and getEpsilonHigh(), getEpsilon() is the middle.
+public final class ThresholdSearchResult
+{
+	// n, k, a, b and the seed of the search, its epsilon isn't used
+	private final TrialParameters parameters;
+	private final GraphProperty property;
+	private final int numPointSets;
+	private final double epsilonLow;
+	private final double epsilonHigh;
+	private final double probabilityLow;
+	private final double probabilityHigh;
+	// Every epsilon that was tried, in order, and the probability found there
+	private final List<Double> stepEpsilons;
+	private final List<Double> stepProbabilities;
+	
+	public ThresholdSearchResult(TrialParameters parameters, GraphProperty property, int numPointSets,
+								 double epsilonLow, double epsilonHigh, double probabilityLow, double probabilityHigh,
+								 List<Double> stepEpsilons, List<Double> stepProbabilities)
+	{
+		this.parameters = parameters;
+		this.property = property;
+		this.numPointSets = numPointSets;
+		this.epsilonLow = epsilonLow;
+		this.epsilonHigh = epsilonHigh;
+		this.probabilityLow = probabilityLow;
+		this.probabilityHigh = probabilityHigh;
+		this.stepEpsilons = Collections.unmodifiableList(new ArrayList<Double>(stepEpsilons));
+		this.stepProbabilities = Collections.unmodifiableList(new ArrayList<Double>(stepProbabilities));
+	}
+	
+	public double getEpsilon()
+	{
+		return (epsilonLow + epsilonHigh) / 2;
+	}
+	
+	// The radius at getEpsilon()
+	public double getRadius()
+	{
+		return 1 / Math.pow(parameters.getNumVertices(), parameters.getA() / parameters.getB() + getEpsilon());
+	}
+	
+	// Each step checks the property on every point set once
+	public int getNumGraphsChecked()
+	{
+		return stepEpsilons.size() * numPointSets;
+	}
+	
+	// Getters
+	public TrialParameters getParameters() { return parameters; }
+	public GraphProperty getProperty() { return property; }
+	public int getNumPointSets() { return numPointSets; }
+	public double getEpsilonLow() { return epsilonLow; }
+	public double getEpsilonHigh() { return epsilonHigh; }
+	public double getProbabilityLow() { return probabilityLow; }
+	public double getProbabilityHigh() { return probabilityHigh; }
+	public List<Double> getStepEpsilons() { return stepEpsilons; }
+	public List<Double> getStepProbabilities() { return stepProbabilities; }
+}
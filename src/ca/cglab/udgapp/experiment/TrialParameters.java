@@ -0,0 +1,45 @@
+package ca.cglab.udgapp.experiment;
+
+// The inputs of a single random graph trial.
+// The radius is r = 1 / n^((a / b) + epsilon), the same formula the GUI uses.
+// The seed fixes the vertex positions, so a trial can be replayed exactly.
+public final class TrialParameters
+{
+	private final int trialId;
+	private final int numVertices;
+	private final int k;
+	private final double a;
+	private final double b;
+	private final double epsilon;
+	private final int repetition;
+	private final long seed;
+	
+	public TrialParameters(int trialId, int numVertices, int k, double a, double b, double epsilon, int repetition,
+						   long seed)
+	{
+		if(b == 0) throw new ArithmeticException("Cannot divide by zero");
+		this.trialId = trialId;
+		this.numVertices = numVertices;
+		this.k = k;
+		this.a = a;
+		this.b = b;
+		this.epsilon = epsilon;
+		this.repetition = repetition;
+		this.seed = seed;
+	}
+	
+	public double getMaxDistance()
+	{
+		return 1 / Math.pow(numVertices, (a / b) + epsilon);
+	}
+	
+	// Getters
+	public int getTrialId() { return trialId; }
+	public int getNumVertices() { return numVertices; }
+	public int getK() { return k; }
+	public double getA() { return a; }
+	public double getB() { return b; }
+	public double getEpsilon() { return epsilon; }
+	public int getRepetition() { return repetition; }
+	public long getSeed() { return seed; }
+}
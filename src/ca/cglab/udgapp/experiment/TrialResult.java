@@ -0,0 +1,43 @@
+package ca.cglab.udgapp.experiment;
+
+import ca.cglab.udgapp.graphmodel.GraphSummary;
+import ca.cglab.udgapp.metrics.MetricsSnapshot;
+
+// The statistics measured on the graph of a single trial
+public final class TrialResult
+{
+	private final TrialParameters parameters;
+	private final long numIntersectingEdges;
+	private final long numFreeEdges;
+	private final long numSuperFreeEdges;
+	// The edge count and the component, degree and edge length distributions
+	private final GraphSummary summary;
+	private final long elapsedMillis;
+	// Where the time went while the graph was built
+	private final MetricsSnapshot metrics;
+	
+	public TrialResult(TrialParameters parameters, long numIntersectingEdges, long numFreeEdges,
+					   long numSuperFreeEdges, GraphSummary summary, long elapsedMillis, MetricsSnapshot metrics)
+	{
+		this.parameters = parameters;
+		this.numIntersectingEdges = numIntersectingEdges;
+		this.numFreeEdges = numFreeEdges;
+		this.numSuperFreeEdges = numSuperFreeEdges;
+		this.summary = summary;
+		this.elapsedMillis = elapsedMillis;
+		this.metrics = metrics;
+	}
+	
+	// Getters
+	public TrialParameters getParameters() { return parameters; }
+	public long getNumEdges() { return summary.getNumEdges(); }
+	public long getNumIntersectingEdges() { return numIntersectingEdges; }
+	public long getNumFreeEdges() { return numFreeEdges; }
+	public long getNumSuperFreeEdges() { return numSuperFreeEdges; }
+	public GraphSummary getSummary() { return summary; }
+	public int getNumComponents() { return summary.getNumComponents(); }
+	public int getNumVerticesInLargestComponent() { return summary.getNumVerticesInLargestComponent(); }
+	public int getNumComponentsWithAtLeastKVertices() { return summary.getNumComponentsWithAtLeastKVertices(parameters.getK()); }
+	public long getElapsedMillis() { return elapsedMillis; }
+	public MetricsSnapshot getMetrics() { return metrics; }
+}
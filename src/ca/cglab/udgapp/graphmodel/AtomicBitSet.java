@@ -0,0 +1,46 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A fixed size set of bits that several threads can set at the same time
+public final class AtomicBitSet
+{
+	private final AtomicLongArray words;
+	private final int numBits;
+	
+	public AtomicBitSet(int numBits)
+	{
+		this.numBits = numBits;
+		words = new AtomicLongArray((numBits + 63) >>> 6);
+	}
+	
+	public void set(int bit)
+	{
+		int index = bit >>> 6;
+		long mask = 1L << bit;
+		long word = words.get(index);
+		// Retry until the bit is set, either by this thread or another one
+		while((word & mask) == 0 && !words.compareAndSet(index, word, word | mask))
+		{
+			word = words.get(index);
+		}
+	}
+	
+	public boolean get(int bit)
+	{
+		return (words.get(bit >>> 6) & (1L << bit)) != 0;
+	}
+	
+	// Only meant to be called once no other thread is setting bits
+	public int cardinality()
+	{
+		int count = 0;
+		for(int i = 0, l = words.length(); i < l; i++)
+		{
+			count += Long.bitCount(words.get(i));
+		}
+		return count;
+	}
+	
+	public int size() { return numBits; }
+}
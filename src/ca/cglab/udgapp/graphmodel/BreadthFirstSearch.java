@@ -1,110 +1,194 @@
 package ca.cglab.udgapp.graphmodel;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Queue;
+import java.util.Arrays;
 
-// An algorithm like class that traverses a UnitDiskGraph and provides some information about its traversal
+import ca.cglab.udgapp.metrics.Stage;
+
+// An algorithm like class that traverses a UnitDiskGraph and provides some information about its traversal.
+// The queue and the visited marks are kept between searches, so a search doesn't allocate anything
+// apart from what it returns. One BreadthFirstSearch must only be used by one thread at a time, but
+// any number of them can search the same graph at once as long as the graph isn't changed meanwhile.
 public class BreadthFirstSearch
 {
+	// How many vertices are visited between two checks for cancellation
+	private static final int CHECK_INTERVAL = 4096;
+	
 	private final UnitDiskGraph udg;
 	
-	// Keeps track of all the connected components(sub-graphs) in 'udg'
-	// Each connected component is of type ArrayList<Vertex>.
-	private ArrayList<ArrayList<Vertex>> allConnectedComponents;
+	// The number of vertices in each connected component(sub-graph) in 'udg'
+	private int[] componentSizes;
+	
+	// A vertex has been reached by the current search if its mark equals 'epoch'.
+	// Every search starts a new epoch, so the marks never have to be cleared one by one.
+	private int[] marks;
+	private int epoch;
+	
+	// Holds the vertices in the order they were reached, it never needs more than one slot per vertex
+	private int[] queue;
 	
 	public BreadthFirstSearch(UnitDiskGraph udg)
 	{
 		this.udg = udg;
+		componentSizes = new int[0];
+		marks = new int[0];
+		queue = new int[0];
 	}
 	
 	// Returns an ArrayList of the entire connected sub-graph
 	// component containing startingVertex, using breadth-first-search.
+	// startingVertex has to come from udg.getVertices().
 	public ArrayList<Vertex> getConnectedComponentWith(Vertex startingVertex)
 	{
-		ArrayList<Vertex> visitedVertices = new ArrayList<Vertex>();
-		Queue<Vertex> q = new ArrayDeque<Vertex>();
-
-		startingVertex.setVisited(true);
-		q.add(startingVertex);
-		visitedVertices.add(startingVertex);
-		
-		while(!q.isEmpty())
+		int[] component = getConnectedComponentWith(startingVertex.getIndex());
+		ArrayList<Vertex> vertices = udg.getVertices();
+		ArrayList<Vertex> visitedVertices = new ArrayList<Vertex>(component.length);
+		for(int i = 0; i < component.length; i++)
+		{
+			visitedVertices.add(vertices.get(component[i]));
+		}
+		return visitedVertices;
+	}
+	
+	// Returns the indices of all the vertices in the connected component
+	// containing startingVertex, in the order they were visited.
+	// Reports its progress and checks for cancellation through the graph.
+	public int[] getConnectedComponentWith(int startingVertex)
+	{
+		startSearches();
+		udg.beginProgress(Stage.COMPONENT_SEARCH, udg.getVertexCount());
+		return Arrays.copyOf(queue, search(startingVertex, true));
+	}
+	
+	// Returns the number of vertices in the connected component containing startingVertex
+	// without allocating anything. Checks for cancellation but doesn't report its progress,
+	// so it can run on several threads at once.
+	public int getComponentSizeOf(int startingVertex)
+	{
+		startSearches();
+		return search(startingVertex, false);
+	}
+	
+	// Numbers the connected components 0, 1, ... in the order of their lowest vertex.
+	// Stores the component of every vertex v in componentIds[v] and the number of vertices
+	// in component c in componentSizes[c], then returns the number of components.
+	// Both arrays need room for one entry per vertex and can be reused from call to call,
+	// so nothing is allocated. Like getComponentSizeOf() it doesn't report its progress.
+	public int labelComponents(int[] componentIds, int[] componentSizes)
+	{
+		int n = udg.getVertexCount();
+		if(componentIds.length < n || componentSizes.length < n)
+		{
+			throw new IllegalArgumentException("The arrays need room for " + n + " vertices");
+		}
+		startSearches();
+		int numComponents = 0;
+		for(int v = 0; v < n; v++)
 		{
-			Vertex first = q.remove();
-			ArrayList<Vertex> neighbours = first.getNeighbours();
-			for(int i = 0; i < neighbours.size(); i++)
+			// One epoch for the whole labelling, every vertex is reached exactly once
+			if(marks[v] == epoch)
 			{
-				Vertex second = neighbours.get(i);
-				if(!second.isVisited())
-				{
-					second.setVisited(true);
-					q.add(second);
-					visitedVertices.add(second);
-				}
+				continue;
+			}
+			int size = search(v, false);
+			for(int i = 0; i < size; i++)
+			{
+				componentIds[queue[i]] = numComponents;
 			}
+			componentSizes[numComponents++] = size;
 		}
-		for(int i = 0; i < visitedVertices.size(); i++)
+		return numComponents;
+	}
+	
+	// Gets the queue and the marks ready for the current graph and starts a new epoch
+	private void startSearches()
+	{
+		int n = udg.getVertexCount();
+		if(marks.length != n)
 		{
-			visitedVertices.get(i).setVisited(false);
+			marks = new int[n];
+			queue = new int[n];
+			epoch = 0;
 		}
-		return visitedVertices;
+		if(epoch == Integer.MAX_VALUE)
+		{
+			// Old marks could look current once the epoch wraps around
+			Arrays.fill(marks, 0);
+			epoch = 0;
+		}
+		epoch++;
 	}
 	
-	// Determines all the connected components(sub-graphs) within udg
-	public void determineAllConnectedComponents()
+	// Visits the component of startingVertex, marking its vertices with the current epoch.
+	// Afterwards queue[0] to queue[size - 1] hold them in the order they were reached.
+	// Returns the size.
+	private int search(int startingVertex, boolean reportProgress)
 	{
-		allConnectedComponents = new ArrayList<ArrayList<Vertex>>();
-		ArrayList<Vertex> vertices = udg.getVertices();
-		// This is used to keep track of which vertices already are in a connected component
-		ArrayList<Vertex> visitedVertices = new ArrayList<Vertex>(vertices.size());
+		int[] offsets = udg.getOffsets();
+		int[] adjacency = udg.getAdjacency();
+		int head = 0;
+		int tail = 0;
 		
-		// Start with the first component
-		ArrayList<Vertex> first = getConnectedComponentWith(vertices.get(0));
-		visitedVertices.addAll(first);
-		allConnectedComponents.add(first);
-		
-		// Go through all vertices in the unit disk graph
-		// and get the connected components containing each vertex
-		for(int i = 1, l = vertices.size(); i < l; i++)
+		marks[startingVertex] = epoch;
+		queue[tail++] = startingVertex;
+		while(head < tail)
 		{
-			Vertex v = vertices.get(i);
-			// Check if v is already part of a component
-			if(!visitedVertices.contains(v))
+			int first = queue[head++];
+			for(int p = offsets[first], l = offsets[first + 1]; p < l; p++)
+			{
+				int second = adjacency[p];
+				if(marks[second] != epoch)
+				{
+					marks[second] = epoch;
+					queue[tail++] = second;
+				}
+			}
+			if(head % CHECK_INTERVAL == 0)
 			{
-				// v has not been verified as part of a component
-				// so get the connected component it belongs to
-				// and then add that component to the main components list
-				ArrayList<Vertex> current = getConnectedComponentWith(v);
-				visitedVertices.addAll(current);
-				allConnectedComponents.add(current);
+				if(reportProgress)
+				{
+					udg.checkpoint(CHECK_INTERVAL);
+				}
+				else
+				{
+					udg.checkCancelled();
+				}
 			}
 		}
+		return tail;
+	}
+	
+	// Determines all the connected components(sub-graphs) within udg.
+	// The graph tracks its components in a union-find structure while
+	// its edges are created, so this doesn't need to traverse anything.
+	public void determineAllConnectedComponents()
+	{
+		componentSizes = udg.getComponents().getComponentSizes();
 	}
 	
 	// Determines the largest number of vertices in a connected component
 	public int getNumVerticesinLargestComponent()
 	{
 		int numVerticesInLargestComponent = 0;
-		for(ArrayList<Vertex> component : allConnectedComponents)
+		for(int size : componentSizes)
 		{
-			if(component.size() > numVerticesInLargestComponent)
+			if(size > numVerticesInLargestComponent)
 			{
-				numVerticesInLargestComponent = component.size();
+				numVerticesInLargestComponent = size;
 			}
 		}
 		
 		return numVerticesInLargestComponent;
 	}
-
+	
 	
 	// Determines the number of connected components with >= k vertices
 	public int numConnectedComponentsWithAtLeastKVertices(int k)
 	{
 		int num = 0;
-		for(ArrayList<Vertex> component : allConnectedComponents)
+		for(int size : componentSizes)
 		{
-			if(component.size() >= k)
+			if(size >= k)
 			{
 				num++;
 			}
@@ -117,9 +201,9 @@ public class BreadthFirstSearch
 	public int numConnectedComponentsWithKVertices(int k)
 	{
 		int num = 0;
-		for(ArrayList<Vertex> component : allConnectedComponents)
+		for(int size : componentSizes)
 		{
-			if(component.size() == k)
+			if(size == k)
 			{
 				num++;
 			}
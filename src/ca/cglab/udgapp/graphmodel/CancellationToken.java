@@ -0,0 +1,29 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.concurrent.CancellationException;
+
+// Lets one thread ask the long running loops on another thread to stop.
+// The loops check the token every so often and throw a CancellationException once it is cancelled.
+// A token can't be reset, so every new piece of work needs a new token.
+public final class CancellationToken
+{
+	private volatile boolean cancelled;
+	
+	public void cancel()
+	{
+		cancelled = true;
+	}
+	
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+	
+	public void throwIfCancelled()
+	{
+		if(cancelled)
+		{
+			throw new CancellationException("Cancelled");
+		}
+	}
+}
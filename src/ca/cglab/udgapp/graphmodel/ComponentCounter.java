@@ -0,0 +1,44 @@
+package ca.cglab.udgapp.graphmodel;
+
+// Tracks the connected components of a streamed graph with a union-find over the vertices
+public final class ComponentCounter implements EdgeConsumer
+{
+	private final UnionFind components;
+	private int numVerticesInLargestComponent;
+	
+	public ComponentCounter(int numVertices)
+	{
+		components = new UnionFind(numVertices);
+		numVerticesInLargestComponent = Math.min(numVertices, 1);
+	}
+	
+	public void acceptEdge(int first, int second, double length)
+	{
+		int root = components.union(first, second);
+		if(root >= 0)
+		{
+			numVerticesInLargestComponent = Math.max(numVerticesInLargestComponent, components.getComponentSize(root));
+		}
+	}
+	
+	public void finish() {}
+	
+	// The number of components with at least k vertices
+	public int numComponentsWithAtLeastKVertices(int k)
+	{
+		int count = 0;
+		for(int size : components.getComponentSizes())
+		{
+			if(size >= k)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	// Getters
+	public UnionFind getComponents() { return components; }
+	public int getNumComponents() { return components.getNumComponents(); }
+	public int getNumVerticesInLargestComponent() { return numVerticesInLargestComponent; }
+}
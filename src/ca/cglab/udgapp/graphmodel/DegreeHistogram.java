@@ -0,0 +1,41 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// Counts the degree of every vertex of a streamed graph.
+// After finish(), getHistogram()[d] is the number of vertices with degree d.
+public final class DegreeHistogram implements EdgeConsumer
+{
+	private final int[] degrees;
+	private long[] histogram;
+	
+	public DegreeHistogram(int numVertices)
+	{
+		degrees = new int[numVertices];
+		histogram = new long[1];
+	}
+	
+	public void acceptEdge(int first, int second, double length)
+	{
+		degrees[first]++;
+		degrees[second]++;
+	}
+	
+	public void finish()
+	{
+		int maxDegree = 0;
+		for(int degree : degrees)
+		{
+			maxDegree = Math.max(maxDegree, degree);
+		}
+		histogram = new long[maxDegree + 1];
+		for(int degree : degrees)
+		{
+			histogram[degree]++;
+		}
+	}
+	
+	public int getDegree(int v) { return degrees[v]; }
+	public int getMaxDegree() { return histogram.length - 1; }
+	public long[] getHistogram() { return Arrays.copyOf(histogram, histogram.length); }
+}
@@ -0,0 +1,638 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// A unit disk graph whose vertices can be added, moved and removed one at a time, for simulations
+// where only a few points change per step. UnitDiskGraph keeps its edges in arrays that have to be
+// rebuilt as a whole, so this keeps its own lists and every change only looks at the grid cells
+// around the vertex it touches. The cells are laid out by a VertexGrid, so they are at least
+// 'maxDistance' wide and:
+// - the neighbours of a vertex are in the 3x3 cells around it;
+// - an edge can only cross edges whose lower vertex is within 'maxDistance' of its bounding box,
+//   and a vertex can only lie in the rectangle of edges whose lower vertex is within 1.5 times that.
+//   Each edge keeps how many edges cross it and how many vertices are in its rectangle, so being
+//   intersecting, free or super free is known at any time;
+// - the components are kept in a UnionFind while edges are added. It can't undo a union, so once an
+//   edge goes away the next question about the components builds it again from all the edges.
+// Vertex ids stay the same while the vertex exists and are reused after it is removed.
+public final class DynamicUnitDiskGraph
+{
+	private final double maxDistance;
+	// UnitDiskGraph.squaredDistanceLimit(maxDistance)
+	private final double maxSquaredDistance;
+	// Only used for its layout, the vertices in each cell are kept below
+	private final VertexGrid grid;
+	
+	// The vertices, indexed by vertex id
+	private double[] xs;
+	private double[] ys;
+	private boolean[] alive;
+	// The ids of the edges at each vertex, in no particular order
+	private int[][] incident;
+	private int[] degree;
+	// Where each vertex is stored in the grid
+	private int[] cellOf;
+	private int[] slotOf;
+	private final IdPool vertexIds;
+	private int numVertices;
+	
+	// The edges, indexed by edge id, with the lower vertex id first
+	private int[] firsts;
+	private int[] seconds;
+	private double[] lengths;
+	// How many edges cross each edge and how many vertices lie in its rectangle
+	private int[] crossings;
+	private int[] verticesInside;
+	private final IdPool edgeIds;
+	private int numEdges;
+	private int numIntersectingEdges;
+	private int numSuperFreeEdges;
+	
+	// Over the vertex ids, the removed ones are left on their own.
+	// Null once an edge is removed, until the components are asked for again.
+	private UnionFind components;
+	
+	// The vertex ids in each grid cell
+	private final int[][] cellItems;
+	private final int[] cellSizes;
+	
+	// Marks the neighbours of the vertex connectToNeighbours() works on, false everywhere else
+	private boolean[] isNeighbour;
+	private final EdgeRectangle rectangle;
+	
+	// An empty graph. The grid is sized for about 'expectedVertices' vertices,
+	// more still work but every change gets slower.
+	public DynamicUnitDiskGraph(double maxDistance, int expectedVertices)
+	{
+		if(!(maxDistance >= 0)) throw new IllegalArgumentException("The distance threshold can't be negative");
+		this.maxDistance = maxDistance;
+		maxSquaredDistance = UnitDiskGraph.squaredDistanceLimit(maxDistance);
+		grid = new VertexGrid(maxDistance, Math.max(1, expectedVertices));
+		int numCells = grid.getCellsPerSide() * grid.getCellsPerSide();
+		cellItems = new int[numCells][];
+		cellSizes = new int[numCells];
+		
+		int capacity = Math.max(16, expectedVertices);
+		xs = new double[capacity];
+		ys = new double[capacity];
+		alive = new boolean[capacity];
+		incident = new int[capacity][];
+		degree = new int[capacity];
+		cellOf = new int[capacity];
+		slotOf = new int[capacity];
+		isNeighbour = new boolean[capacity];
+		
+		firsts = new int[capacity];
+		seconds = new int[capacity];
+		lengths = new double[capacity];
+		crossings = new int[capacity];
+		verticesInside = new int[capacity];
+		
+		vertexIds = new IdPool();
+		edgeIds = new IdPool();
+		rectangle = new EdgeRectangle();
+	}
+	
+	// Starts with the vertices and the distance threshold of 'udg', vertex i of udg gets the id i
+	public DynamicUnitDiskGraph(UnitDiskGraph udg)
+	{
+		this(udg.getMaxDistance(), udg.getVertexCount());
+		for(int v = 0, l = udg.getVertexCount(); v < l; v++)
+		{
+			addVertex(udg.getX(v), udg.getY(v));
+		}
+	}
+	
+	// Adds a vertex with edges to every vertex at most 'maxDistance' away and returns its id
+	public int addVertex(double x, double y)
+	{
+		int v = vertexIds.take();
+		ensureVertexCapacity(v + 1);
+		xs[v] = x;
+		ys[v] = y;
+		alive[v] = true;
+		degree[v] = 0;
+		numVertices++;
+		if(components != null && v >= components.getNumVertices())
+		{
+			// A reused id is a set of its own already, a new one isn't in the union-find yet
+			components = null;
+		}
+		
+		addToCell(v);
+		countInRectangles(v, 1);
+		connectToNeighbours(v);
+		return v;
+	}
+	
+	// Removes a vertex and its edges, which may split its component into several
+	public void removeVertex(int v)
+	{
+		checkVertex(v);
+		while(degree[v] > 0)
+		{
+			removeEdge(incident[v][degree[v] - 1]);
+		}
+		countInRectangles(v, -1);
+		removeFromCell(v);
+		alive[v] = false;
+		numVertices--;
+		vertexIds.give(v);
+	}
+	
+	// Moves a vertex. Its edges that are still short enough are kept, the others are removed
+	// and edges to its new neighbours are added.
+	public void moveVertex(int v, double x, double y)
+	{
+		checkVertex(v);
+		// Take the edges of v out of the counts while they still have their old shape
+		for(int i = 0; i < degree[v]; i++)
+		{
+			detach(incident[v][i]);
+		}
+		countInRectangles(v, -1);
+		removeFromCell(v);
+		xs[v] = x;
+		ys[v] = y;
+		addToCell(v);
+		countInRectangles(v, 1);
+		
+		// The edges that got too long are only removed once the new edges are in, until then they
+		// are left out of the counts. They share v with every edge attached meanwhile, so they
+		// can't cross any of them.
+		int[] dropped = new int[degree[v]];
+		int numDropped = 0;
+		for(int i = 0; i < degree[v]; i++)
+		{
+			int e = incident[v][i];
+			double squared = squaredDistanceBetween(firsts[e], seconds[e]);
+			if(squared <= maxSquaredDistance)
+			{
+				lengths[e] = Math.sqrt(squared);
+				attach(e);
+			}
+			else
+			{
+				dropped[numDropped++] = e;
+			}
+		}
+		connectToNeighbours(v);
+		for(int i = 0; i < numDropped; i++)
+		{
+			int e = dropped[i];
+			removeIncident(firsts[e], e);
+			removeIncident(seconds[e], e);
+			edgeIds.give(e);
+			numEdges--;
+		}
+		if(numDropped > 0)
+		{
+			components = null;
+		}
+	}
+	
+	// A UnitDiskGraph with the same vertices, in the order of their ids, and the same edges.
+	// Its intersecting and super free edges still have to be determined.
+	public UnitDiskGraph toUnitDiskGraph()
+	{
+		int limit = vertexIds.getLimit();
+		int[] index = new int[limit];
+		double[] newXs = new double[numVertices];
+		double[] newYs = new double[numVertices];
+		int[] offsets = new int[numVertices + 1];
+		for(int v = 0, i = 0; v < limit; v++)
+		{
+			if(alive[v])
+			{
+				index[v] = i;
+				newXs[i] = xs[v];
+				newYs[i] = ys[v];
+				offsets[i + 1] = offsets[i] + degree[v];
+				i++;
+			}
+		}
+		int[] adjacency = new int[offsets[numVertices]];
+		for(int v = 0; v < limit; v++)
+		{
+			if(alive[v])
+			{
+				int start = offsets[index[v]];
+				for(int k = 0; k < degree[v]; k++)
+				{
+					int e = incident[v][k];
+					adjacency[start + k] = index[firsts[e] == v ? seconds[e] : firsts[e]];
+				}
+				// UnitDiskGraph keeps its neighbour lists sorted
+				Arrays.sort(adjacency, start, start + degree[v]);
+			}
+		}
+		UnitDiskGraph udg = new UnitDiskGraph(numVertices);
+		udg.setMaxDistance(maxDistance);
+		udg.restore(newXs, newYs, offsets, adjacency);
+		return udg;
+	}
+	
+	// Adds edges from v to every vertex close enough that isn't a neighbour yet
+	private void connectToNeighbours(int v)
+	{
+		int oldDegree = degree[v];
+		markNeighbours(v, oldDegree, true);
+		int column = grid.getColumn(xs[v]);
+		int row = grid.getRow(ys[v]);
+		int lastCell = grid.getCellsPerSide() - 1;
+		for(int r = Math.max(0, row - 1), rl = Math.min(lastCell, row + 1); r <= rl; r++)
+		{
+			for(int c = Math.max(0, column - 1), cl = Math.min(lastCell, column + 1); c <= cl; c++)
+			{
+				int cell = grid.getCell(c, r);
+				for(int p = 0; p < cellSizes[cell]; p++)
+				{
+					int u = cellItems[cell][p];
+					if(u != v && !isNeighbour[u] && squaredDistanceBetween(u, v) <= maxSquaredDistance)
+					{
+						addEdge(u, v);
+					}
+				}
+			}
+		}
+		markNeighbours(v, oldDegree, false);
+	}
+	
+	// Sets the marks of the vertices at the other end of the first 'count' edges of v
+	private void markNeighbours(int v, int count, boolean mark)
+	{
+		for(int i = 0; i < count; i++)
+		{
+			int e = incident[v][i];
+			isNeighbour[firsts[e] == v ? seconds[e] : firsts[e]] = mark;
+		}
+	}
+	
+	private void addEdge(int a, int b)
+	{
+		int e = edgeIds.take();
+		ensureEdgeCapacity(e + 1);
+		firsts[e] = Math.min(a, b);
+		seconds[e] = Math.max(a, b);
+		lengths[e] = Math.sqrt(squaredDistanceBetween(a, b));
+		attach(e);
+		addIncident(a, e);
+		addIncident(b, e);
+		numEdges++;
+		if(components != null)
+		{
+			components.union(a, b);
+		}
+	}
+	
+	private void removeEdge(int e)
+	{
+		detach(e);
+		removeIncident(firsts[e], e);
+		removeIncident(seconds[e], e);
+		edgeIds.give(e);
+		numEdges--;
+		components = null;
+	}
+	
+	// Counts the edges that cross e and the vertices in its rectangle, and adds e to the counts
+	// of the edges it crosses and to the totals
+	private void attach(int e)
+	{
+		crossings[e] = changeCrossingsWith(e, 1);
+		verticesInside[e] = countVerticesInside(e);
+		count(e, 1);
+	}
+	
+	// Undoes attach(), using the shape e has now
+	private void detach(int e)
+	{
+		count(e, -1);
+		changeCrossingsWith(e, -1);
+	}
+	
+	// Adds 'delta' to the crossing count of every edge that crosses e and returns how many there are.
+	// Where two edges cross, the lower vertex of each is at most 'maxDistance' away,
+	// so only edges whose lower vertex is that close to the bounding box of e are looked at.
+	private int changeCrossingsWith(int e, int delta)
+	{
+		int v1 = firsts[e];
+		int v2 = seconds[e];
+		int firstColumn = grid.getColumn(Math.min(xs[v1], xs[v2]) - maxDistance);
+		int lastColumn = grid.getColumn(Math.max(xs[v1], xs[v2]) + maxDistance);
+		int firstRow = grid.getRow(Math.min(ys[v1], ys[v2]) - maxDistance);
+		int lastRow = grid.getRow(Math.max(ys[v1], ys[v2]) + maxDistance);
+		int numCrossings = 0;
+		for(int r = firstRow; r <= lastRow; r++)
+		{
+			for(int c = firstColumn; c <= lastColumn; c++)
+			{
+				int cell = grid.getCell(c, r);
+				for(int p = 0; p < cellSizes[cell]; p++)
+				{
+					int u = cellItems[cell][p];
+					for(int q = 0; q < degree[u]; q++)
+					{
+						int other = incident[u][q];
+						// Each edge is found from its lower vertex only
+						if(firsts[other] == u && other != e && cross(e, other))
+						{
+							numCrossings++;
+							changeCrossings(other, delta);
+						}
+					}
+				}
+			}
+		}
+		return numCrossings;
+	}
+	
+	// Adds 'delta' to the vertex count of every edge whose rectangle contains v
+	private void countInRectangles(int v, int delta)
+	{
+		// See isInRectangle() for how far away the lower vertex of such an edge can be
+		double reach = 1.5 * maxDistance;
+		for(int r = grid.getRow(ys[v] - reach), rl = grid.getRow(ys[v] + reach); r <= rl; r++)
+		{
+			for(int c = grid.getColumn(xs[v] - reach), cl = grid.getColumn(xs[v] + reach); c <= cl; c++)
+			{
+				int cell = grid.getCell(c, r);
+				for(int p = 0; p < cellSizes[cell]; p++)
+				{
+					int u = cellItems[cell][p];
+					for(int q = 0; q < degree[u]; q++)
+					{
+						int e = incident[u][q];
+						if(firsts[e] == u && seconds[e] != v && u != v && isInRectangle(e, v))
+						{
+							changeVerticesInside(e, delta);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	// The vertices other than its own two in the rectangle of e, found through the grid cells
+	// the rectangle covers like UnitDiskGraph.isSuperFreeWithGrid()
+	private int countVerticesInside(int e)
+	{
+		setRectangle(e);
+		int inside = 0;
+		for(int r = grid.getRow(rectangle.getMinY()), rl = grid.getRow(rectangle.getMaxY()); r <= rl; r++)
+		{
+			for(int c = grid.getColumn(rectangle.getMinX()), cl = grid.getColumn(rectangle.getMaxX()); c <= cl; c++)
+			{
+				int cell = grid.getCell(c, r);
+				for(int p = 0; p < cellSizes[cell]; p++)
+				{
+					int j = cellItems[cell][p];
+					if(j != firsts[e] && j != seconds[e] && rectangle.contains(xs[j], ys[j]))
+					{
+						inside++;
+					}
+				}
+			}
+		}
+		return inside;
+	}
+	
+	private boolean isInRectangle(int e, int v)
+	{
+		// Everything in the rectangle is at most sqrt(length^2 + maxDistance^2) <= sqrt(2) * maxDistance
+		// from the first vertex, so farther vertices are ruled out without setting up the rectangle
+		double differenceX = xs[v] - xs[firsts[e]];
+		double differenceY = ys[v] - ys[firsts[e]];
+		double reach = 1.5 * maxDistance;
+		if(differenceX * differenceX + differenceY * differenceY > reach * reach)
+		{
+			return false;
+		}
+		setRectangle(e);
+		return rectangle.contains(xs[v], ys[v]);
+	}
+	
+	private void setRectangle(int e)
+	{
+		int v1 = firsts[e];
+		int v2 = seconds[e];
+		rectangle.set(xs[v1], ys[v1], xs[v2], ys[v2], lengths[e], maxDistance);
+	}
+	
+	private boolean cross(int e, int other)
+	{
+		return UnitDiskGraph.edgesIntersect(xs, ys, firsts[e], seconds[e], firsts[other], seconds[other]);
+	}
+	
+	private void changeCrossings(int e, int delta)
+	{
+		count(e, -1);
+		crossings[e] += delta;
+		count(e, 1);
+	}
+	
+	private void changeVerticesInside(int e, int delta)
+	{
+		count(e, -1);
+		verticesInside[e] += delta;
+		count(e, 1);
+	}
+	
+	// Adds e to the totals, or takes it out again with sign -1
+	private void count(int e, int sign)
+	{
+		if(crossings[e] > 0)
+		{
+			numIntersectingEdges += sign;
+		}
+		else if(verticesInside[e] == 0)
+		{
+			numSuperFreeEdges += sign;
+		}
+	}
+	
+	// Builds the union-find again from the edges if an edge was removed since it was last built
+	private UnionFind getComponents()
+	{
+		if(components == null)
+		{
+			int limit = vertexIds.getLimit();
+			components = new UnionFind(limit);
+			for(int v = 0; v < limit; v++)
+			{
+				// The removed vertices have no edges
+				for(int q = 0; q < degree[v]; q++)
+				{
+					int e = incident[v][q];
+					if(firsts[e] == v)
+					{
+						components.union(v, seconds[e]);
+					}
+				}
+			}
+		}
+		return components;
+	}
+	
+	private void addToCell(int v)
+	{
+		int cell = grid.getCell(grid.getColumn(xs[v]), grid.getRow(ys[v]));
+		if(cellItems[cell] == null)
+		{
+			cellItems[cell] = new int[4];
+		}
+		else if(cellSizes[cell] == cellItems[cell].length)
+		{
+			cellItems[cell] = Arrays.copyOf(cellItems[cell], cellSizes[cell] * 2);
+		}
+		cellOf[v] = cell;
+		slotOf[v] = cellSizes[cell];
+		cellItems[cell][cellSizes[cell]++] = v;
+	}
+	
+	private void removeFromCell(int v)
+	{
+		int cell = cellOf[v];
+		int last = cellItems[cell][--cellSizes[cell]];
+		cellItems[cell][slotOf[v]] = last;
+		slotOf[last] = slotOf[v];
+	}
+	
+	private void addIncident(int v, int e)
+	{
+		if(incident[v] == null)
+		{
+			incident[v] = new int[4];
+		}
+		else if(degree[v] == incident[v].length)
+		{
+			incident[v] = Arrays.copyOf(incident[v], degree[v] * 2);
+		}
+		incident[v][degree[v]++] = e;
+	}
+	
+	// The last edge of v takes the place of e
+	private void removeIncident(int v, int e)
+	{
+		int[] list = incident[v];
+		for(int i = 0; i < degree[v]; i++)
+		{
+			if(list[i] == e)
+			{
+				list[i] = list[--degree[v]];
+				return;
+			}
+		}
+	}
+	
+	// The same computation, with the same operand order, as UnitDiskGraph.squaredDistanceBetweenVertices()
+	private double squaredDistanceBetween(int a, int b)
+	{
+		int first = Math.min(a, b);
+		int second = Math.max(a, b);
+		double differenceX = xs[second] - xs[first];
+		double differenceY = ys[second] - ys[first];
+		
+		return (differenceX * differenceX) + (differenceY * differenceY);
+	}
+	
+	private void checkVertex(int v)
+	{
+		if(!containsVertex(v)) throw new IllegalArgumentException("There is no vertex " + v);
+	}
+	
+	private void ensureVertexCapacity(int size)
+	{
+		if(size <= xs.length)
+		{
+			return;
+		}
+		int capacity = Math.max(size, xs.length * 2);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		alive = Arrays.copyOf(alive, capacity);
+		incident = Arrays.copyOf(incident, capacity);
+		degree = Arrays.copyOf(degree, capacity);
+		cellOf = Arrays.copyOf(cellOf, capacity);
+		slotOf = Arrays.copyOf(slotOf, capacity);
+		isNeighbour = Arrays.copyOf(isNeighbour, capacity);
+	}
+	
+	private void ensureEdgeCapacity(int size)
+	{
+		if(size <= firsts.length)
+		{
+			return;
+		}
+		int capacity = Math.max(size, firsts.length * 2);
+		firsts = Arrays.copyOf(firsts, capacity);
+		seconds = Arrays.copyOf(seconds, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		crossings = Arrays.copyOf(crossings, capacity);
+		verticesInside = Arrays.copyOf(verticesInside, capacity);
+	}
+	
+	public boolean containsVertex(int v)
+	{
+		return v >= 0 && v < vertexIds.getLimit() && alive[v];
+	}
+	
+	public boolean areConnected(int a, int b)
+	{
+		checkVertex(a);
+		checkVertex(b);
+		UnionFind components = getComponents();
+		return components.find(a) == components.find(b);
+	}
+	
+	public int getComponentSize(int v)
+	{
+		checkVertex(v);
+		return getComponents().getComponentSize(v);
+	}
+	
+	public int getNumComponents()
+	{
+		// Every removed vertex id is a set of its own
+		UnionFind components = getComponents();
+		return components.getNumComponents() - (components.getNumVertices() - numVertices);
+	}
+	
+	// Getters
+	public double getMaxDistance() { return maxDistance; }
+	public int getNumVertices() { return numVertices; }
+	// Every vertex id is below this, but not every id below it has to be in use
+	public int getVertexIdLimit() { return vertexIds.getLimit(); }
+	public double getX(int v) { return xs[v]; }
+	public double getY(int v) { return ys[v]; }
+	public int getDegree(int v) { return degree[v]; }
+	public int getNumEdges() { return numEdges; }
+	public int getNumIntersectingEdges() { return numIntersectingEdges; }
+	public int getNumFreeEdges() { return numEdges - numIntersectingEdges; }
+	public int getNumSuperFreeEdges() { return numSuperFreeEdges; }
+	
+	// Hands out the ids 0, 1, ... and takes back ids that are no longer used, which are handed out first
+	private static final class IdPool
+	{
+		private int[] free = new int[16];
+		private int numFree;
+		private int limit;
+		
+		int take()
+		{
+			return numFree > 0 ? free[--numFree] : limit++;
+		}
+		
+		void give(int id)
+		{
+			if(numFree == free.length)
+			{
+				free = Arrays.copyOf(free, numFree * 2);
+			}
+			free[numFree++] = id;
+		}
+		
+		// Every id handed out so far is below this
+		int getLimit() { return limit; }
+	}
+}
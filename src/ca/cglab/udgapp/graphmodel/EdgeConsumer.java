@@ -0,0 +1,11 @@
+package ca.cglab.udgapp.graphmodel;
+
+// Receives the edges of a graph one at a time as they are found, see UnitDiskGraph.streamNewConnectedEdges().
+// The edges arrive grid row by grid row, ordered by the row of 'first'.
+public interface EdgeConsumer
+{
+	void acceptEdge(int first, int second, double length);
+	
+	// Called once after the last edge
+	void finish();
+}
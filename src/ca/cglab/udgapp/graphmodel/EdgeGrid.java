@@ -0,0 +1,213 @@
+package ca.cglab.udgapp.graphmodel;
+
+// A uniform grid over the unit square that buckets edges by the cells their bounding boxes cover.
+// Two edges can only intersect if their bounding boxes overlap, and overlapping
+// bounding boxes always share at least one cell, so only edges in the same cell need to be tested.
+public final class EdgeGrid
+{
+	// The token is checked once every CHECK_MASK + 1 edges
+	private static final int CHECK_MASK = (1 << 16) - 1;
+	
+	private final double[] xs;
+	private final double[] ys;
+	private final EdgeList edges;
+	private final int cellsPerSide;
+	
+	// Edge indices sorted by cell, in the same layout as VertexGrid.
+	// An edge is stored once in every cell its bounding box covers.
+	private final int[] cellStart;
+	private final int[] cellItems;
+	
+	// For each entry of cellItems, the edge's x1, y1, x2, y2 in 'segments' and the lowest row and
+	// column its bounding box covers in 'minCells', as row << 16 | column. The pairs in a cell
+	// are then tested from consecutive memory instead of going through the vertex arrays.
+	private final double[] segments;
+	private final int[] minCells;
+	
+	public EdgeGrid(double[] xs, double[] ys, EdgeList edges, double cellSize)
+	{
+		this(xs, ys, edges, cellSize, null);
+	}
+	
+	// Same as above, but checks the token every so often since
+	// bucketing millions of edges takes a while. The token can be null.
+	public EdgeGrid(double[] xs, double[] ys, EdgeList edges, double cellSize, CancellationToken token)
+	{
+		this.xs = xs;
+		this.ys = ys;
+		this.edges = edges;
+		int numEdges = edges.size();
+		cellsPerSide = VertexGrid.determineCellsPerSide(cellSize, numEdges);
+		
+		int numCells = cellsPerSide * cellsPerSide;
+		cellStart = new int[numCells + 1];
+		
+		// First pass counts how many edges land in each cell
+		for(int e = 0; e < numEdges; e++)
+		{
+			for(int r = getMinRow(e), rl = getMaxRow(e); r <= rl; r++)
+			{
+				for(int c = getMinColumn(e), cl = getMaxColumn(e); c <= cl; c++)
+				{
+					cellStart[getCell(c, r) + 1]++;
+				}
+			}
+			if(token != null && (e & CHECK_MASK) == 0)
+			{
+				token.throwIfCancelled();
+			}
+		}
+		for(int c = 0; c < numCells; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+		
+		// Second pass fills the cells
+		int numItems = cellStart[numCells];
+		cellItems = new int[numItems];
+		segments = new double[numItems * 4];
+		minCells = new int[numItems];
+		int[] next = new int[numCells];
+		System.arraycopy(cellStart, 0, next, 0, numCells);
+		for(int e = 0; e < numEdges; e++)
+		{
+			int minCell = getMinRow(e) << 16 | getMinColumn(e);
+			for(int r = getMinRow(e), rl = getMaxRow(e); r <= rl; r++)
+			{
+				for(int c = getMinColumn(e), cl = getMaxColumn(e); c <= cl; c++)
+				{
+					int p = next[getCell(c, r)]++;
+					cellItems[p] = e;
+					segments[p * 4] = xs[edges.getFirst(e)];
+					segments[p * 4 + 1] = ys[edges.getFirst(e)];
+					segments[p * 4 + 2] = xs[edges.getSecond(e)];
+					segments[p * 4 + 3] = ys[edges.getSecond(e)];
+					minCells[p] = minCell;
+				}
+			}
+			if(token != null && (e & CHECK_MASK) == 0)
+			{
+				token.throwIfCancelled();
+			}
+		}
+	}
+	
+	// Calls the tester once for every pair of edges whose bounding boxes share a cell.
+	// A pair that shares several cells is only reported from the cell at the lowest
+	// column and row they share, so no pair is tested twice.
+	public void forEachCandidatePair(CandidatePairTester tester)
+	{
+		forEachCandidatePair(0, cellsPerSide, tester);
+	}
+	
+	// Same as above, but only for the pairs reported from the rows startRow to endRow - 1.
+	// Different row ranges report different pairs, so they can be handled by different threads.
+	public void forEachCandidatePair(int startRow, int endRow, CandidatePairTester tester)
+	{
+		for(int row = startRow; row < endRow; row++)
+		{
+			for(int column = 0; column < cellsPerSide; column++)
+			{
+				int cell = getCell(column, row);
+				for(int p = cellStart[cell], l = cellStart[cell + 1]; p < l; p++)
+				{
+					for(int q = p + 1; q < l; q++)
+					{
+						if(isLowestSharedCell(p, q, column, row))
+						{
+							tester.test(cellItems[p], cellItems[q]);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	// Like forEachCandidatePair(), but only calls the tester for the pairs of edges that cross
+	// without sharing a vertex, the same ones UnitDiskGraph.edgesIntersect() accepts.
+	// Everything runs on the packed coordinates: edges with a common vertex have an end in the
+	// same place, so the vertices only need to be looked up for those. Returns the number of pairs tested.
+	public long forEachIntersectingPair(int startRow, int endRow, CandidatePairTester tester)
+	{
+		long tests = 0;
+		for(int row = startRow; row < endRow; row++)
+		{
+			for(int column = 0; column < cellsPerSide; column++)
+			{
+				int cell = getCell(column, row);
+				for(int p = cellStart[cell], l = cellStart[cell + 1]; p < l; p++)
+				{
+					double x1 = segments[p * 4];
+					double y1 = segments[p * 4 + 1];
+					double x2 = segments[p * 4 + 2];
+					double y2 = segments[p * 4 + 3];
+					for(int q = p + 1; q < l; q++)
+					{
+						if(!isLowestSharedCell(p, q, column, row))
+						{
+							continue;
+						}
+						tests++;
+						double x3 = segments[q * 4];
+						double y3 = segments[q * 4 + 1];
+						double x4 = segments[q * 4 + 2];
+						double y4 = segments[q * 4 + 3];
+						if((x1 == x3 && y1 == y3) || (x1 == x4 && y1 == y4) || (x2 == x3 && y2 == y3) || (x2 == x4 && y2 == y4))
+						{
+							// Edges with a common vertex always touch there, which doesn't count
+							if(shareVertex(cellItems[p], cellItems[q]))
+							{
+								continue;
+							}
+						}
+						if(SegmentIntersection.intersect(x1, y1, x2, y2, x3, y3, x4, y4))
+						{
+							tester.test(cellItems[p], cellItems[q]);
+						}
+					}
+				}
+			}
+		}
+		return tests;
+	}
+	
+	// A pair that shares several cells is only reported from the one at the lowest column and row they share
+	private boolean isLowestSharedCell(int p, int q, int column, int row)
+	{
+		return Math.max(minCells[p] & 0xFFFF, minCells[q] & 0xFFFF) == column
+			&& Math.max(minCells[p] >>> 16, minCells[q] >>> 16) == row;
+	}
+	
+	private boolean shareVertex(int first, int second)
+	{
+		int a1 = edges.getFirst(first);
+		int a2 = edges.getSecond(first);
+		int b1 = edges.getFirst(second);
+		int b2 = edges.getSecond(second);
+		return a1 == b1 || a1 == b2 || a2 == b1 || a2 == b2;
+	}
+	
+	// Receives the indices of two edges that might intersect
+	public interface CandidatePairTester
+	{
+		void test(int first, int second);
+	}
+	
+	private int getMinColumn(int e) { return getColumn(Math.min(xs[edges.getFirst(e)], xs[edges.getSecond(e)])); }
+	private int getMaxColumn(int e) { return getColumn(Math.max(xs[edges.getFirst(e)], xs[edges.getSecond(e)])); }
+	private int getMinRow(int e) { return getRow(Math.min(ys[edges.getFirst(e)], ys[edges.getSecond(e)])); }
+	private int getMaxRow(int e) { return getRow(Math.max(ys[edges.getFirst(e)], ys[edges.getSecond(e)])); }
+	
+	private int getColumn(double x) { return clamp((int) (x * cellsPerSide)); }
+	private int getRow(double y) { return clamp((int) (y * cellsPerSide)); }
+	private int getCell(int column, int row) { return row * cellsPerSide + column; }
+	
+	private int clamp(int index)
+	{
+		if(index < 0) return 0;
+		if(index >= cellsPerSide) return cellsPerSide - 1;
+		return index;
+	}
+	
+	public int getCellsPerSide() { return cellsPerSide; }
+}
@@ -0,0 +1,74 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// A growable list of edges stored as parallel primitive arrays.
+// Edge e connects vertex getFirst(e) to vertex getSecond(e) and has length getWeight(e).
+public final class EdgeList
+{
+	private int[] firsts;
+	private int[] seconds;
+	private double[] weights;
+	private int size;
+	
+	public EdgeList(int initialCapacity)
+	{
+		int capacity = Math.max(initialCapacity, 16);
+		firsts = new int[capacity];
+		seconds = new int[capacity];
+		weights = new double[capacity];
+		size = 0;
+	}
+	
+	public void add(int first, int second, double weight)
+	{
+		if(size == firsts.length)
+		{
+			grow(size + 1);
+		}
+		firsts[size] = first;
+		seconds[size] = second;
+		weights[size] = weight;
+		size++;
+	}
+	
+	// Appends all the edges of 'other' to the end of this list
+	public void addAll(EdgeList other)
+	{
+		if(size + other.size > firsts.length)
+		{
+			grow(size + other.size);
+		}
+		System.arraycopy(other.firsts, 0, firsts, size, other.size);
+		System.arraycopy(other.seconds, 0, seconds, size, other.size);
+		System.arraycopy(other.weights, 0, weights, size, other.size);
+		size += other.size;
+	}
+	
+	private void grow(int minCapacity)
+	{
+		// Grow by half like ArrayList, but never past what an array can hold
+		long capacity = Math.max((long) minCapacity, firsts.length + (firsts.length >> 1));
+		int newCapacity = (int) Math.min(capacity, Integer.MAX_VALUE - 8);
+		if(newCapacity < minCapacity)
+		{
+			throw new IllegalStateException("Too many edges");
+		}
+		firsts = Arrays.copyOf(firsts, newCapacity);
+		seconds = Arrays.copyOf(seconds, newCapacity);
+		weights = Arrays.copyOf(weights, newCapacity);
+	}
+	
+	public void clear() { size = 0; }
+	
+	// Getters
+	public int size() { return size; }
+	public int getFirst(int e) { return firsts[e]; }
+	public int getSecond(int e) { return seconds[e]; }
+	public double getWeight(int e) { return weights[e]; }
+	
+	// Direct access for the loops in this package. Only the first size() entries are used.
+	int[] getFirsts() { return firsts; }
+	int[] getSeconds() { return seconds; }
+	double[] getWeights() { return weights; }
+}
@@ -0,0 +1,61 @@
+package ca.cglab.udgapp.graphmodel;
+
+// The rectangle that has to be empty for a free edge to be super free: it runs along the edge
+// from one end to the other and extends 'distance' to both sides of it.
+// Everything comes straight from the edge vector. With u the unit vector along the edge, the
+// corners are the ends moved by (u.y, -u.x) * distance either way, and a point is inside if its
+// offset from the first end has a dot product with u between 0 and the length and one with
+// (u.y, -u.x) between -distance and distance. No trigonometry and nothing allocated per edge,
+// so one instance is reused for all the edges a loop looks at.
+final class EdgeRectangle
+{
+	private double x1;
+	private double y1;
+	private double x2;
+	private double y2;
+	// Unit vector from the first end to the second
+	private double unitX;
+	private double unitY;
+	private double length;
+	private double distance;
+	
+	// Sets the rectangle for the edge from (x1, y1) to (x2, y2) of the given length
+	void set(double x1, double y1, double x2, double y2, double length, double distance)
+	{
+		this.x1 = x1;
+		this.y1 = y1;
+		this.x2 = x2;
+		this.y2 = y2;
+		unitX = (x2 - x1) / length;
+		unitY = (y2 - y1) / length;
+		this.length = length;
+		this.distance = distance;
+	}
+	
+	// True if (x, y) is strictly inside the rectangle. An edge of length 0 contains nothing.
+	boolean contains(double x, double y)
+	{
+		double differenceX = x - x1;
+		double differenceY = y - y1;
+		double along = differenceX * unitX + differenceY * unitY;
+		double across = differenceX * unitY - differenceY * unitX;
+		return along > 0 && along < length && across > -distance && across < distance;
+	}
+	
+	// The bounding box. The corners stick out past the ends by the offset to the sides.
+	double getMinX() { return Math.min(x1, x2) - Math.abs(unitY) * distance; }
+	double getMaxX() { return Math.max(x1, x2) + Math.abs(unitY) * distance; }
+	double getMinY() { return Math.min(y1, y2) - Math.abs(unitX) * distance; }
+	double getMaxY() { return Math.max(y1, y2) + Math.abs(unitX) * distance; }
+	
+	// Fills 'corners' with x0, y0, ..., x3, y3, going around the rectangle in order
+	void getCorners(double[] corners)
+	{
+		double offsetX = unitY * distance;
+		double offsetY = -unitX * distance;
+		corners[0] = x1 + offsetX; corners[1] = y1 + offsetY;
+		corners[2] = x2 + offsetX; corners[3] = y2 + offsetY;
+		corners[4] = x2 - offsetX; corners[5] = y2 - offsetY;
+		corners[6] = x1 - offsetX; corners[7] = y1 - offsetY;
+	}
+}
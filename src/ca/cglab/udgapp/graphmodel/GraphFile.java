@@ -0,0 +1,217 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Reads and writes graphs in a compact binary format, see UnitDiskGraph.load() and save().
+// Everything is little endian and laid out as:
+//   header     int magic ("UDGF"), int version, int flags, int vertex count,
+//              double distance threshold, long seed, long adjacency length    (40 bytes)
+//   xs         vertex count doubles
+//   ys         vertex count doubles
+//   offsets    vertex count + 1 ints      only when flags has HAS_ADJACENCY
+//   adjacency  adjacency length ints      only when flags has HAS_ADJACENCY
+// The adjacency is the graph's compressed sparse row form, so the edges come back in the same order.
+// The file is memory mapped and each section is moved with one bulk get or put per mapping,
+// which is a plain memory copy, so a graph with millions of vertices loads at disk speed.
+final class GraphFile
+{
+	static final int MAGIC = 0x46474455;
+	static final int VERSION = 1;
+
+	static final int HAS_ADJACENCY = 1;
+
+	private static final int HEADER_BYTES = 40;
+
+	// A single mapping can't be larger than 2GB, so bigger sections are mapped in pieces
+	private static final long MAX_MAPPING_BYTES = 1 << 30;
+
+	private GraphFile()
+	{
+	}
+
+	static void write(File file, UnitDiskGraph udg, boolean includeAdjacency) throws IOException
+	{
+		int vertexCount = udg.getVertexCount();
+		int[] offsets = udg.getOffsets();
+		int[] adjacency = udg.getAdjacency();
+		long adjacencyLength = includeAdjacency ? offsets[vertexCount] : 0;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long size = fileSize(vertexCount, includeAdjacency, adjacencyLength);
+			raf.setLength(size);
+
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(includeAdjacency ? HAS_ADJACENCY : 0);
+			header.putInt(vertexCount);
+			header.putDouble(udg.getMaxDistance());
+			header.putLong(udg.getSeed());
+			header.putLong(adjacencyLength);
+
+			long position = HEADER_BYTES;
+			position = writeDoubles(channel, position, udg.getXs(), vertexCount);
+			position = writeDoubles(channel, position, udg.getYs(), vertexCount);
+			if(includeAdjacency)
+			{
+				position = writeInts(channel, position, offsets, vertexCount + 1);
+				writeInts(channel, position, adjacency, (int) adjacencyLength);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	static UnitDiskGraph read(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_BYTES)
+			{
+				throw new IOException("Not a graph file: " + file);
+			}
+			MappedByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+			if(header.getInt() != MAGIC)
+			{
+				throw new IOException("Not a graph file: " + file);
+			}
+			int version = header.getInt();
+			if(version < 1 || version > VERSION)
+			{
+				throw new IOException("The graph file has version " + version + ", only 1 to " + VERSION + " can be read");
+			}
+			int flags = header.getInt();
+			int vertexCount = header.getInt();
+			double maxDistance = header.getDouble();
+			long seed = header.getLong();
+			long adjacencyLength = header.getLong();
+
+			boolean hasAdjacency = (flags & HAS_ADJACENCY) != 0;
+			if(vertexCount < 0 || adjacencyLength < 0 || adjacencyLength > Integer.MAX_VALUE
+			|| channel.size() != fileSize(vertexCount, hasAdjacency, adjacencyLength))
+			{
+				throw new IOException("The graph file is truncated or corrupt: " + file);
+			}
+
+			if(!(maxDistance >= 0) || Double.isInfinite(maxDistance))
+			{
+				throw new IOException("The graph file has an invalid distance threshold: " + maxDistance);
+			}
+
+			double[] xs = new double[vertexCount];
+			double[] ys = new double[vertexCount];
+			long position = HEADER_BYTES;
+			position = readDoubles(channel, position, xs);
+			position = readDoubles(channel, position, ys);
+
+			UnitDiskGraph udg = new UnitDiskGraph(vertexCount, seed);
+			udg.setMaxDistance(maxDistance);
+			if(hasAdjacency)
+			{
+				int[] offsets = new int[vertexCount + 1];
+				int[] adjacency = new int[(int) adjacencyLength];
+				position = readInts(channel, position, offsets);
+				readInts(channel, position, adjacency);
+				try
+				{
+					udg.restore(xs, ys, offsets, adjacency);
+				}
+				catch(IllegalArgumentException e)
+				{
+					throw new IOException("The graph file is corrupt: " + e.getMessage());
+				}
+			}
+			else
+			{
+				udg.restore(xs, ys, null, null);
+			}
+			return udg;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static long fileSize(int vertexCount, boolean hasAdjacency, long adjacencyLength)
+	{
+		long size = HEADER_BYTES + 16L * vertexCount;
+		if(hasAdjacency)
+		{
+			size += 4L * (vertexCount + 1) + 4L * adjacencyLength;
+		}
+		return size;
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+			throws IOException
+	{
+		MappedByteBuffer buffer = channel.map(mode, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	// Each of these moves 'count' values starting at 'position' and returns the position after them
+
+	private static long writeDoubles(FileChannel channel, long position, double[] values, int count) throws IOException
+	{
+		int perMapping = (int) (MAX_MAPPING_BYTES / 8);
+		for(int start = 0; start < count; start += perMapping)
+		{
+			int length = Math.min(perMapping, count - start);
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, 8L * length);
+			buffer.asDoubleBuffer().put(values, start, length);
+			position += 8L * length;
+		}
+		return position;
+	}
+
+	private static long writeInts(FileChannel channel, long position, int[] values, int count) throws IOException
+	{
+		int perMapping = (int) (MAX_MAPPING_BYTES / 4);
+		for(int start = 0; start < count; start += perMapping)
+		{
+			int length = Math.min(perMapping, count - start);
+			MappedByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, 4L * length);
+			buffer.asIntBuffer().put(values, start, length);
+			position += 4L * length;
+		}
+		return position;
+	}
+
+	private static long readDoubles(FileChannel channel, long position, double[] values) throws IOException
+	{
+		int perMapping = (int) (MAX_MAPPING_BYTES / 8);
+		for(int start = 0; start < values.length; start += perMapping)
+		{
+			int length = Math.min(perMapping, values.length - start);
+			map(channel, FileChannel.MapMode.READ_ONLY, position, 8L * length).asDoubleBuffer().get(values, start, length);
+			position += 8L * length;
+		}
+		return position;
+	}
+
+	private static long readInts(FileChannel channel, long position, int[] values) throws IOException
+	{
+		int perMapping = (int) (MAX_MAPPING_BYTES / 4);
+		for(int start = 0; start < values.length; start += perMapping)
+		{
+			int length = Math.min(perMapping, values.length - start);
+			map(channel, FileChannel.MapMode.READ_ONLY, position, 4L * length).asIntBuffer().get(values, start, length);
+			position += 4L * length;
+		}
+		return position;
+	}
+}
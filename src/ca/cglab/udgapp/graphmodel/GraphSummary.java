@@ -0,0 +1,190 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// The distributions of a graph, worked out in one O(n + m) pass so that tables and exporters can
+// ask as many questions as they like without going over the graph again:
+// - how many components there are of every size,
+// - how many vertices there are of every degree, the isolated vertices being the ones of degree 0,
+// - how many edges there are in equal width length bins from 0 to the distance threshold.
+// The degrees and lengths are counted by DegreeHistogram and LengthHistogram, the components come
+// from a union-find, so the streamed and the stored graphs are counted the same way.
+// Component sizes are kept as the distinct sizes and their counts. The sizes add up to n,
+// so there are fewer than sqrt(2n) distinct ones however the graph looks.
+// It never changes once it is made, so it can be handed to other threads as it is.
+public final class GraphSummary
+{
+	// The number of edge length bins the GUI and the experiments use
+	public static final int DEFAULT_LENGTH_BINS = 20;
+	
+	private final int numVertices;
+	// Streamed graphs can have more edges than an int holds
+	private final long numEdges;
+	
+	// The distinct component sizes in increasing order, how many components have each size,
+	// and how many have at least that size
+	private final int[] componentSizes;
+	private final int[] componentCounts;
+	private final int[] componentsAtLeast;
+	
+	// degreeCounts[d] is the number of vertices with degree d
+	private final long[] degreeCounts;
+	
+	private final long[] lengthBins;
+	private final double lengthBinWidth;
+	private final double meanEdgeLength;
+	
+	// 'degrees' and 'lengths' must have seen every edge and been finished
+	private GraphSummary(UnionFind components, DegreeHistogram degrees, LengthHistogram lengths)
+	{
+		numVertices = components.getNumVertices();
+		numEdges = lengths.getNumEdges();
+		degreeCounts = degrees.getHistogram();
+		lengthBins = lengths.getBins();
+		lengthBinWidth = lengths.getBinWidth();
+		meanEdgeLength = lengths.getMeanLength();
+		
+		// Counting sort of the sizes, then only the sizes that occur are kept
+		int[] rootSizes = components.getComponentSizes();
+		int largest = 0;
+		for(int size : rootSizes)
+		{
+			largest = Math.max(largest, size);
+		}
+		int[] countsBySize = new int[largest + 1];
+		int numDistinct = 0;
+		for(int size : rootSizes)
+		{
+			if(countsBySize[size]++ == 0)
+			{
+				numDistinct++;
+			}
+		}
+		componentSizes = new int[numDistinct];
+		componentCounts = new int[numDistinct];
+		for(int size = 1, i = 0; size <= largest; size++)
+		{
+			if(countsBySize[size] > 0)
+			{
+				componentSizes[i] = size;
+				componentCounts[i] = countsBySize[size];
+				i++;
+			}
+		}
+		componentsAtLeast = new int[numDistinct + 1];
+		for(int i = numDistinct - 1; i >= 0; i--)
+		{
+			componentsAtLeast[i] = componentsAtLeast[i + 1] + componentCounts[i];
+		}
+	}
+	
+	// Summarizes the graph as it is now, with the edge lengths in 'numLengthBins' bins up to its distance threshold.
+	// The components are the ones the graph keeps up to date, only the edges are gone over again.
+	public static GraphSummary of(UnitDiskGraph udg, int numLengthBins)
+	{
+		return of(udg.getEdgeList(), udg.getEdgeList().size(), udg.getComponents(), udg.getMaxDistance(), numLengthBins);
+	}
+	
+	// The same for a sweep at its current radius
+	public static GraphSummary of(RadiusSweep sweep, int numLengthBins)
+	{
+		return of(sweep.getSortedPairs(), sweep.getNumEdges(), sweep.getComponents(), sweep.getRadius(), numLengthBins);
+	}
+	
+	// Summarizes the first numEdges edges of the list, whose components are already known
+	private static GraphSummary of(EdgeList edges, int numEdges, UnionFind components, double maxLength,
+								   int numLengthBins)
+	{
+		DegreeHistogram degrees = new DegreeHistogram(components.getNumVertices());
+		LengthHistogram lengths = new LengthHistogram(numLengthBins, maxLength);
+		int[] firsts = edges.getFirsts();
+		int[] seconds = edges.getSeconds();
+		double[] weights = edges.getWeights();
+		for(int e = 0; e < numEdges; e++)
+		{
+			degrees.acceptEdge(firsts[e], seconds[e], weights[e]);
+			lengths.acceptEdge(firsts[e], seconds[e], weights[e]);
+		}
+		degrees.finish();
+		lengths.finish();
+		return new GraphSummary(components, degrees, lengths);
+	}
+	
+	// Builds the summary of a streamed graph, see UnitDiskGraph.streamNewConnectedEdges().
+	// Takes O(n) memory however many edges there are.
+	public static final class Collector implements EdgeConsumer
+	{
+		private final ComponentCounter components;
+		private final DegreeHistogram degrees;
+		private final LengthHistogram lengths;
+		private GraphSummary summary;
+		
+		public Collector(int numVertices, int numLengthBins, double maxLength)
+		{
+			components = new ComponentCounter(numVertices);
+			degrees = new DegreeHistogram(numVertices);
+			lengths = new LengthHistogram(numLengthBins, maxLength);
+		}
+		
+		public void acceptEdge(int first, int second, double length)
+		{
+			components.acceptEdge(first, second, length);
+			degrees.acceptEdge(first, second, length);
+			lengths.acceptEdge(first, second, length);
+		}
+		
+		public void finish()
+		{
+			components.finish();
+			degrees.finish();
+			lengths.finish();
+			summary = new GraphSummary(components.getComponents(), degrees, lengths);
+		}
+		
+		// Null until finish() is called
+		public GraphSummary getSummary() { return summary; }
+	}
+	
+	// The number of components with exactly k vertices
+	public int getNumComponentsOfSize(int k)
+	{
+		int i = Arrays.binarySearch(componentSizes, k);
+		return i >= 0 ? componentCounts[i] : 0;
+	}
+	
+	// The number of components with at least k vertices
+	public int getNumComponentsWithAtLeastKVertices(int k)
+	{
+		int i = Arrays.binarySearch(componentSizes, k);
+		return componentsAtLeast[i >= 0 ? i : -i - 1];
+	}
+	
+	public int getNumVerticesInLargestComponent()
+	{
+		return componentSizes.length == 0 ? 0 : componentSizes[componentSizes.length - 1];
+	}
+	
+	public long getNumVerticesWithDegree(int d)
+	{
+		return d >= 0 && d < degreeCounts.length ? degreeCounts[d] : 0;
+	}
+	
+	public double getMeanDegree()
+	{
+		return numVertices == 0 ? 0 : 2.0 * numEdges / numVertices;
+	}
+	
+	public double getMeanEdgeLength() { return meanEdgeLength; }
+	
+	// Getters
+	public int getNumVertices() { return numVertices; }
+	public long getNumEdges() { return numEdges; }
+	public int getNumComponents() { return componentsAtLeast[0]; }
+	public long getNumIsolatedVertices() { return getNumVerticesWithDegree(0); }
+	public int getMaxDegree() { return degreeCounts.length - 1; }
+	public int[] getComponentSizes() { return Arrays.copyOf(componentSizes, componentSizes.length); }
+	public int[] getComponentCounts() { return Arrays.copyOf(componentCounts, componentCounts.length); }
+	public long[] getDegreeCounts() { return Arrays.copyOf(degreeCounts, degreeCounts.length); }
+	public long[] getLengthBins() { return Arrays.copyOf(lengthBins, lengthBins.length); }
+	public double getLengthBinWidth() { return lengthBinWidth; }
+}
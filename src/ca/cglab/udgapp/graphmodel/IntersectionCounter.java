@@ -0,0 +1,263 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// Counts the intersecting, free and super free edges of a streamed graph without keeping every edge.
+// The stream sends the edges grid row by grid row, with cells at least the distance threshold wide,
+// and an edge found from row R only covers the rows R and R + 1. Two edges can only cross if they
+// share a cell, so once the stream reaches row R + 2 nothing new can cross the edges from row R.
+// Only the edges from the current and the previous row are kept, and the older ones are counted
+// and dropped as the stream moves down.
+public final class IntersectionCounter implements EdgeConsumer
+{
+	private final double[] xs;
+	private final double[] ys;
+	private final double distance;
+	private final VertexGrid grid;
+	private final int cellsPerSide;
+	
+	// The edges found from the previous row and from the current row
+	private Window previous;
+	private Window current;
+	private int currentRow;
+	
+	// The window edges in each cell of the grid rows currentRow - 1 to currentRow + 1.
+	// Row r uses the bucket row r % 3 and the entries are window edge ids, see Window.
+	private final int[][] buckets;
+	private final int[] bucketSizes;
+	
+	private long numEdges;
+	private long numIntersectingEdges;
+	private long numFreeEdges;
+	private long numSuperFreeEdges;
+	private int peakWindowSize;
+	private final EdgeRectangle rectangle;
+	// False if only the crossings matter, then the free edges aren't tested for being super free
+	private final boolean countSuperFree;
+	// The vertices of the first two edges found to cross, null until then
+	private int[] firstCrossing;
+	
+	// Uses the vertices and the distance threshold the graph has now
+	public IntersectionCounter(UnitDiskGraph udg)
+	{
+		this(udg, new VertexGrid(udg.getXs(), udg.getYs(), udg.getVertexCount(), udg.getMaxDistance()), true);
+	}
+	
+	// The grid has to be the one the stream uses
+	IntersectionCounter(UnitDiskGraph udg, VertexGrid grid, boolean countSuperFree)
+	{
+		xs = udg.getXs();
+		ys = udg.getYs();
+		distance = udg.getMaxDistance();
+		this.grid = grid;
+		this.countSuperFree = countSuperFree;
+		cellsPerSide = grid.getCellsPerSide();
+		
+		previous = new Window(0);
+		current = new Window(1);
+		buckets = new int[3 * cellsPerSide][];
+		bucketSizes = new int[3 * cellsPerSide];
+		rectangle = new EdgeRectangle();
+	}
+	
+	public void acceptEdge(int first, int second, double length)
+	{
+		advanceTo(grid.getRow(ys[first]));
+		
+		// Stored with the lower vertex first, the same way the graph stores its edges,
+		// so the intersection and rectangle tests see exactly the same coordinates
+		int v1 = Math.min(first, second);
+		int v2 = Math.max(first, second);
+		int minColumn = grid.getColumn(Math.min(xs[v1], xs[v2]));
+		int maxColumn = grid.getColumn(Math.max(xs[v1], xs[v2]));
+		int minRow = grid.getRow(Math.min(ys[v1], ys[v2]));
+		int maxRow = grid.getRow(Math.max(ys[v1], ys[v2]));
+		if(minRow < currentRow || maxRow > currentRow + 1)
+		{
+			throw new IllegalStateException("The edges have to arrive in grid row order");
+		}
+		
+		int id = current.add(v1, v2, length);
+		numEdges++;
+		peakWindowSize = Math.max(peakWindowSize, previous.size + current.size);
+		
+		for(int r = minRow; r <= maxRow; r++)
+		{
+			for(int c = minColumn; c <= maxColumn; c++)
+			{
+				int bucket = (r % 3) * cellsPerSide + c;
+				int[] entries = buckets[bucket];
+				for(int p = 0, l = bucketSizes[bucket]; p < l; p++)
+				{
+					int other = entries[p];
+					Window otherWindow = windowOf(other);
+					int o1 = otherWindow.firsts[other >>> 1];
+					int o2 = otherWindow.seconds[other >>> 1];
+					// A pair that shares several cells is only tested in the lowest one, like EdgeGrid
+					int sharedColumn = Math.max(minColumn, grid.getColumn(Math.min(xs[o1], xs[o2])));
+					int sharedRow = Math.max(minRow, grid.getRow(Math.min(ys[o1], ys[o2])));
+					if(sharedColumn == c && sharedRow == r
+					&& UnitDiskGraph.edgesIntersect(xs, ys, o1, o2, v1, v2))
+					{
+						otherWindow.crossed[other >>> 1] = true;
+						current.crossed[id >>> 1] = true;
+						if(firstCrossing == null)
+						{
+							firstCrossing = new int[] { o1, o2, v1, v2 };
+						}
+					}
+				}
+			}
+		}
+		for(int r = minRow; r <= maxRow; r++)
+		{
+			for(int c = minColumn; c <= maxColumn; c++)
+			{
+				addToBucket((r % 3) * cellsPerSide + c, id);
+			}
+		}
+	}
+	
+	public void finish()
+	{
+		countAndClear(previous);
+		countAndClear(current);
+	}
+	
+	// Moves the window down until 'row' is the current row
+	private void advanceTo(int row)
+	{
+		if(row < currentRow)
+		{
+			throw new IllegalStateException("The edges have to arrive in grid row order");
+		}
+		while(currentRow < row)
+		{
+			// The previous row's edges cover the rows currentRow - 1 and currentRow,
+			// and nothing from the next row on can reach them
+			countAndClear(previous);
+			clearBucketRow((currentRow + 2) % 3);
+			removeFromBucketRow(currentRow % 3, previous.id);
+			
+			Window emptied = previous;
+			previous = current;
+			current = emptied;
+			currentRow++;
+		}
+	}
+	
+	private void countAndClear(Window window)
+	{
+		for(int i = 0; i < window.size; i++)
+		{
+			if(window.crossed[i])
+			{
+				numIntersectingEdges++;
+			}
+			else
+			{
+				numFreeEdges++;
+				if(countSuperFree && UnitDiskGraph.isSuperFreeWithGrid(xs, ys, window.firsts[i], window.seconds[i],
+													 window.lengths[i], distance, grid, rectangle))
+				{
+					numSuperFreeEdges++;
+				}
+			}
+		}
+		window.clear();
+	}
+	
+	private void clearBucketRow(int bucketRow)
+	{
+		Arrays.fill(bucketSizes, bucketRow * cellsPerSide, (bucketRow + 1) * cellsPerSide, 0);
+	}
+	
+	// Drops the entries that point into the given window
+	private void removeFromBucketRow(int bucketRow, int windowId)
+	{
+		for(int bucket = bucketRow * cellsPerSide, l = bucket + cellsPerSide; bucket < l; bucket++)
+		{
+			int[] entries = buckets[bucket];
+			int kept = 0;
+			for(int p = 0, pl = bucketSizes[bucket]; p < pl; p++)
+			{
+				if((entries[p] & 1) != windowId)
+				{
+					entries[kept++] = entries[p];
+				}
+			}
+			bucketSizes[bucket] = kept;
+		}
+	}
+	
+	private void addToBucket(int bucket, int id)
+	{
+		int[] entries = buckets[bucket];
+		if(entries == null)
+		{
+			entries = buckets[bucket] = new int[4];
+		}
+		else if(bucketSizes[bucket] == entries.length)
+		{
+			entries = buckets[bucket] = Arrays.copyOf(entries, entries.length * 2);
+		}
+		entries[bucketSizes[bucket]++] = id;
+	}
+	
+	private Window windowOf(int id)
+	{
+		return (id & 1) == previous.id ? previous : current;
+	}
+	
+	// The edges found from one grid row. Edge i of the window has the id i * 2 + id of the window.
+	private static final class Window
+	{
+		final int id;
+		int[] firsts;
+		int[] seconds;
+		double[] lengths;
+		boolean[] crossed;
+		int size;
+		
+		Window(int id)
+		{
+			this.id = id;
+			firsts = new int[16];
+			seconds = new int[16];
+			lengths = new double[16];
+			crossed = new boolean[16];
+		}
+		
+		int add(int first, int second, double length)
+		{
+			if(size == firsts.length)
+			{
+				int capacity = size * 2;
+				firsts = Arrays.copyOf(firsts, capacity);
+				seconds = Arrays.copyOf(seconds, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				crossed = Arrays.copyOf(crossed, capacity);
+			}
+			firsts[size] = first;
+			seconds[size] = second;
+			lengths[size] = length;
+			crossed[size] = false;
+			return (size++ << 1) | id;
+		}
+		
+		void clear()
+		{
+			size = 0;
+		}
+	}
+	
+	// Getters, the counts are only complete after finish()
+	public long getNumEdges() { return numEdges; }
+	public long getNumIntersectingEdges() { return numIntersectingEdges; }
+	public long getNumFreeEdges() { return numFreeEdges; }
+	public long getNumSuperFreeEdges() { return numSuperFreeEdges; }
+	// As { a1, a2, b1, b2 } with a1 < a2 and b1 < b2, or null if no edges crossed so far
+	public int[] getFirstCrossing() { return firstCrossing; }
+	// The most edges held at once, a measure of the memory used
+	public int getPeakWindowSize() { return peakWindowSize; }
+}
@@ -0,0 +1,40 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// Counts the edges of a streamed graph in equal width length bins from 0 to maxLength.
+// Edges longer than maxLength go in the last bin.
+public final class LengthHistogram implements EdgeConsumer
+{
+	private final long[] bins;
+	private final double maxLength;
+	private long numEdges;
+	private double totalLength;
+	
+	public LengthHistogram(int numBins, double maxLength)
+	{
+		if(numBins < 1) throw new IllegalArgumentException("Need at least one bin");
+		bins = new long[numBins];
+		this.maxLength = maxLength;
+	}
+	
+	public void acceptEdge(int first, int second, double length)
+	{
+		int bin = (int) (length / maxLength * bins.length);
+		bins[Math.max(0, Math.min(bins.length - 1, bin))]++;
+		numEdges++;
+		totalLength += length;
+	}
+	
+	public void finish() {}
+	
+	public double getMeanLength()
+	{
+		return numEdges == 0 ? 0 : totalLength / numEdges;
+	}
+	
+	// Getters
+	public long[] getBins() { return Arrays.copyOf(bins, bins.length); }
+	public double getBinWidth() { return maxLength / bins.length; }
+	public long getNumEdges() { return numEdges; }
+}
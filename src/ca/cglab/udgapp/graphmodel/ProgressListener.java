@@ -0,0 +1,9 @@
+package ca.cglab.udgapp.graphmodel;
+
+// Receives how far along a long running task is.
+// The parallel loops report from several threads at once, so implementations have to be thread safe.
+public interface ProgressListener
+{
+	// 'done' out of 'total' units of the named task are finished
+	void progressMade(String task, long done, long total);
+}
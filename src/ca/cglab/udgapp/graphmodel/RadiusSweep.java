@@ -0,0 +1,281 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.Arrays;
+
+// Looks at one set of vertices for an increasing sequence of distance thresholds.
+// All the pairs up to the largest threshold are found and sorted by length once,
+// then each call to advanceTo() only adds the edges between the previous threshold
+// and the new one, updating the components and the intersecting edges as it goes.
+// At every threshold the counts are the same as building the graph from scratch.
+// To go back to a smaller threshold, reset() starts again from no edges but keeps the sorted pairs.
+public final class RadiusSweep
+{
+	// How many edges are added or looked at between two checks for cancellation
+	private static final int CHECK_INTERVAL = 1024;
+
+	private final double[] xs;
+	private final double[] ys;
+	private final int vertexCount;
+	private final double maxRadius;
+
+	// Every pair within maxRadius, shortest first.
+	// The first numEdges pairs are the edges at the current radius.
+	private final EdgeList pairs;
+	private int numEdges;
+	private double radius;
+
+	private UnionFind components;
+	private int numVerticesInLargestComponent;
+
+	// The edges added so far, bucketed by the cells their bounding boxes cover.
+	// The cells are at least maxRadius wide so an edge covers at most 2x2 cells.
+	private final int cellsPerSide;
+	private final int[][] cellEdges;
+	private final int[] cellSizes;
+
+	// Indexed by edge: how many other edges it crosses so far
+	private final int[] crossings;
+	private int numIntersectingEdges;
+
+	// stamps[e] == f + 1 once edge e has been tested against the new edge f,
+	// so edges stored in several cells are only tested once
+	private final int[] stamps;
+
+	// Only built if the super free edges are asked for
+	private VertexGrid vertexGrid;
+
+	// Stops advanceTo() and countSuperFreeEdges(), can be null
+	private CancellationToken cancellationToken;
+
+	RadiusSweep(double[] xs, double[] ys, int vertexCount, EdgeList pairs, double maxRadius)
+	{
+		this.xs = xs;
+		this.ys = ys;
+		this.vertexCount = vertexCount;
+		this.maxRadius = maxRadius;
+		this.pairs = sortByLength(pairs);
+
+		int numPairs = pairs.size();
+		cellsPerSide = VertexGrid.determineCellsPerSide(maxRadius, numPairs);
+		cellEdges = new int[cellsPerSide * cellsPerSide][];
+		cellSizes = new int[cellsPerSide * cellsPerSide];
+		crossings = new int[numPairs];
+		stamps = new int[numPairs];
+		reset();
+	}
+
+	// Goes back to radius 0 with no edges. The pairs stay sorted, so getting to a radius
+	// again only costs the intersection tests of the edges up to it.
+	public void reset()
+	{
+		components = new UnionFind(vertexCount);
+		numVerticesInLargestComponent = Math.min(vertexCount, 1);
+		Arrays.fill(cellSizes, 0);
+		Arrays.fill(crossings, 0);
+		Arrays.fill(stamps, 0);
+		numIntersectingEdges = 0;
+		numEdges = 0;
+		radius = 0;
+	}
+
+	// Adds every edge no longer than 'newRadius'.
+	// The radius can only grow and can't go past the radius the sweep was created with.
+	// If it is cancelled the sweep is left part of the way there and has to be reset() before it is used again.
+	public void advanceTo(double newRadius)
+	{
+		if(newRadius < radius)
+		{
+			throw new IllegalArgumentException("The radius can only increase");
+		}
+		if(newRadius > maxRadius)
+		{
+			throw new IllegalArgumentException("The radius cannot be larger than " + maxRadius);
+		}
+		radius = newRadius;
+
+		double[] weights = pairs.getWeights();
+		for(int l = pairs.size(); numEdges < l && weights[numEdges] <= newRadius; numEdges++)
+		{
+			addEdge(numEdges);
+			if((numEdges + 1) % CHECK_INTERVAL == 0)
+			{
+				checkCancelled();
+			}
+		}
+	}
+
+	private void checkCancelled()
+	{
+		if(cancellationToken != null)
+		{
+			cancellationToken.throwIfCancelled();
+		}
+	}
+
+	private void addEdge(int edge)
+	{
+		int v1 = pairs.getFirst(edge);
+		int v2 = pairs.getSecond(edge);
+
+		int root = components.union(v1, v2);
+		if(root >= 0)
+		{
+			numVerticesInLargestComponent = Math.max(numVerticesInLargestComponent, components.getComponentSize(root));
+		}
+
+		int minColumn = getCellIndex(Math.min(xs[v1], xs[v2]));
+		int maxColumn = getCellIndex(Math.max(xs[v1], xs[v2]));
+		int minRow = getCellIndex(Math.min(ys[v1], ys[v2]));
+		int maxRow = getCellIndex(Math.max(ys[v1], ys[v2]));
+
+		// Any earlier edge that crosses this one shares a cell with it
+		for(int r = minRow; r <= maxRow; r++)
+		{
+			for(int c = minColumn; c <= maxColumn; c++)
+			{
+				int cell = r * cellsPerSide + c;
+				int[] items = cellEdges[cell];
+				for(int p = 0, l = cellSizes[cell]; p < l; p++)
+				{
+					int other = items[p];
+					if(stamps[other] != edge + 1)
+					{
+						stamps[other] = edge + 1;
+						if(UnitDiskGraph.edgesIntersect(xs, ys, v1, v2, pairs.getFirst(other), pairs.getSecond(other)))
+						{
+							addCrossing(edge);
+							addCrossing(other);
+						}
+					}
+				}
+			}
+		}
+
+		for(int r = minRow; r <= maxRow; r++)
+		{
+			for(int c = minColumn; c <= maxColumn; c++)
+			{
+				addToCell(r * cellsPerSide + c, edge);
+			}
+		}
+	}
+
+	private void addCrossing(int edge)
+	{
+		if(crossings[edge]++ == 0)
+		{
+			numIntersectingEdges++;
+		}
+	}
+
+	private void addToCell(int cell, int edge)
+	{
+		int[] items = cellEdges[cell];
+		if(items == null)
+		{
+			items = cellEdges[cell] = new int[4];
+		}
+		else if(cellSizes[cell] == items.length)
+		{
+			items = cellEdges[cell] = Arrays.copyOf(items, items.length * 2);
+		}
+		items[cellSizes[cell]++] = edge;
+	}
+
+	// Counts the free edges at the current radius with no other vertex in the rectangle
+	// that extends the current radius to both sides of them.
+	// The rectangles grow with the radius so this is recomputed on every call.
+	public int countSuperFreeEdges()
+	{
+		if(vertexGrid == null)
+		{
+			vertexGrid = new VertexGrid(xs, ys, vertexCount, maxRadius);
+		}
+		EdgeRectangle rectangle = new EdgeRectangle();
+		int count = 0;
+		for(int e = 0; e < numEdges; e++)
+		{
+			if((e + 1) % CHECK_INTERVAL == 0)
+			{
+				checkCancelled();
+			}
+			if(crossings[e] == 0 && UnitDiskGraph.isSuperFreeWithGrid(xs, ys, pairs.getFirst(e), pairs.getSecond(e),
+																	   pairs.getWeight(e), radius, vertexGrid, rectangle))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	// Returns the pairs ordered by length. Pairs of the same length keep their order.
+	private static EdgeList sortByLength(EdgeList pairs)
+	{
+		int numPairs = pairs.size();
+		double[] weights = pairs.getWeights();
+		int[] order = new int[numPairs];
+		for(int i = 0; i < numPairs; i++)
+		{
+			order[i] = i;
+		}
+
+		// Bottom up merge sort of the indices, which is stable and doesn't box anything
+		int[] buffer = new int[numPairs];
+		for(int width = 1; width < numPairs; width *= 2)
+		{
+			for(int start = 0; start < numPairs; start += 2 * width)
+			{
+				int middle = Math.min(start + width, numPairs);
+				int end = Math.min(start + 2 * width, numPairs);
+				int i = start;
+				int j = middle;
+				for(int k = start; k < end; k++)
+				{
+					if(i < middle && (j >= end || weights[order[i]] <= weights[order[j]]))
+					{
+						buffer[k] = order[i++];
+					}
+					else
+					{
+						buffer[k] = order[j++];
+					}
+				}
+			}
+			int[] temp = order;
+			order = buffer;
+			buffer = temp;
+		}
+
+		EdgeList sorted = new EdgeList(numPairs);
+		for(int i = 0; i < numPairs; i++)
+		{
+			int p = order[i];
+			sorted.add(pairs.getFirst(p), pairs.getSecond(p), weights[p]);
+		}
+		return sorted;
+	}
+
+	private int getCellIndex(double coordinate)
+	{
+		int index = (int) (coordinate * cellsPerSide);
+		if(index < 0) return 0;
+		if(index >= cellsPerSide) return cellsPerSide - 1;
+		return index;
+	}
+
+	public void setCancellationToken(CancellationToken token) { cancellationToken = token; }
+
+	// Getters
+	public double getRadius() { return radius; }
+	public double getMaxRadius() { return maxRadius; }
+	public int getNumEdges() { return numEdges; }
+	public int getNumIntersectingEdges() { return numIntersectingEdges; }
+	public int getNumFreeEdges() { return numEdges - numIntersectingEdges; }
+	public int getNumVerticesInLargestComponent() { return numVerticesInLargestComponent; }
+	public UnionFind getComponents() { return components; }
+	public int getVertexCount() { return vertexCount; }
+	public boolean isIntersecting(int edge) { return crossings[edge] > 0; }
+
+	// The edges at the current radius are the first getNumEdges() edges of this list
+	public EdgeList getSortedPairs() { return pairs; }
+}
@@ -0,0 +1,55 @@
+package ca.cglab.udgapp.graphmodel;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counter based random vertex positions: the position of vertex i only depends on (seed, i),
+// so any chunk of vertices can be generated on any thread, or regenerated later without storing it.
+// The numbers are the SplitMix64 sequence, which is the same generator java.util.SplittableRandom uses:
+// vertex i gets the (2i + 1)th and (2i + 2)th values of the sequence started from 'seed'.
+public final class RandomPoints
+{
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	// Used to make new seeds differ even when they are made in the same nanosecond
+	private static final AtomicLong seedUniquifier = new AtomicLong(0x2545f4914f6cdd1dL);
+
+	private RandomPoints() {}
+
+	// Returns the x coordinate of vertex 'index', between 0 (inclusive) and 1 (exclusive)
+	public static double getX(long seed, long index)
+	{
+		return toUnitInterval(mix64(seed + (2 * index + 1) * GOLDEN_GAMMA));
+	}
+
+	// Returns the y coordinate of vertex 'index', between 0 (inclusive) and 1 (exclusive)
+	public static double getY(long seed, long index)
+	{
+		return toUnitInterval(mix64(seed + (2 * index + 2) * GOLDEN_GAMMA));
+	}
+
+	// Returns a seed for an independent stream, for example one per trial of an experiment
+	public static long deriveSeed(long seed, long stream)
+	{
+		return mix64(mix64(seed) + (stream + 1) * GOLDEN_GAMMA);
+	}
+
+	// Returns an unpredictable seed for when the user didn't ask for one
+	public static long newSeed()
+	{
+		return mix64(System.nanoTime() ^ seedUniquifier.addAndGet(GOLDEN_GAMMA));
+	}
+
+	// The SplitMix64 output function
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	// Uses the top 53 bits, the same way Random.nextDouble() does
+	private static double toUnitInterval(long bits)
+	{
+		return (bits >>> 11) * 0x1.0p-53;
+	}
+}
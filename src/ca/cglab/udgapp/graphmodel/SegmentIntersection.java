@@ -0,0 +1,74 @@
+package ca.cglab.udgapp.graphmodel;
+
+// The segment intersection test used for the edges, a faster drop-in for Line2D.linesIntersect().
+// Line2D goes straight to the orientation tests of relativeCCW() for every pair. This first rejects
+// pairs whose bounding boxes don't overlap, which is most pairs that only share a grid cell.
+// The orientations use exactly the arithmetic of relativeCCW(), collinear and touching cases included:
+// a point on the other segment's line counts as on it only if it lies between its ends, and touching
+// counts as intersecting. So the answer is always the same as Line2D's, except that pairs with
+// separate bounding boxes are never reported, which Line2D could only do through rounding errors.
+// It is small and allocates nothing, so the JIT inlines it into the loops that call it.
+final class SegmentIntersection
+{
+	private SegmentIntersection()
+	{
+	}
+	
+	// True if the segment (x1, y1)-(x2, y2) intersects the segment (x3, y3)-(x4, y4)
+	static boolean intersect(double x1, double y1, double x2, double y2,
+							 double x3, double y3, double x4, double y4)
+	{
+		// Touching bounding boxes still have to be tested
+		if(Math.max(x1, x2) < Math.min(x3, x4) || Math.max(x3, x4) < Math.min(x1, x2)
+		|| Math.max(y1, y2) < Math.min(y3, y4) || Math.max(y3, y4) < Math.min(y1, y2))
+		{
+			// Line2D takes two single points for intersecting wherever they are, since every
+			// orientation with respect to a single point is 0. Only duplicate vertices give those.
+			return x1 == x2 && y1 == y2 && x3 == x4 && y3 == y4;
+		}
+		
+		// Both ends of the second segment on the same side of the first one, or the other way around
+		if(orientation(x1, y1, x2, y2, x3, y3) * orientation(x1, y1, x2, y2, x4, y4) > 0)
+		{
+			return false;
+		}
+		return orientation(x3, y3, x4, y4, x1, y1) * orientation(x3, y3, x4, y4, x2, y2) <= 0;
+	}
+	
+	// The same for segments packed as x1, y1, x2, y2 one after the other, the first at index 4 * first
+	static boolean intersect(double[] segments, int first, int second)
+	{
+		int i = first * 4;
+		int j = second * 4;
+		return intersect(segments[i], segments[i + 1], segments[i + 2], segments[i + 3],
+						 segments[j], segments[j + 1], segments[j + 2], segments[j + 3]);
+	}
+	
+	// Which side of the line through (x1, y1) and (x2, y2) the point (px, py) is on, the same as
+	// Line2D.relativeCCW(): 1 or -1 for the two sides, and for a point on the line, -1 before the
+	// first end, 1 past the second end and 0 in between
+	static int orientation(double x1, double y1, double x2, double y2, double px, double py)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double qx = px - x1;
+		double qy = py - y1;
+		double ccw = qx * dy - qy * dx;
+		if(ccw == 0.0)
+		{
+			// On the line, see how far along it the point is
+			ccw = qx * dx + qy * dy;
+			if(ccw > 0.0)
+			{
+				qx -= dx;
+				qy -= dy;
+				ccw = qx * dx + qy * dy;
+				if(ccw < 0.0)
+				{
+					ccw = 0.0;
+				}
+			}
+		}
+		return (ccw < 0.0) ? -1 : ((ccw > 0.0) ? 1 : 0);
+	}
+}
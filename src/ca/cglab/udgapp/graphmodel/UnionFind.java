@@ -0,0 +1,85 @@
+package ca.cglab.udgapp.graphmodel;
+
+// A disjoint-set forest over the vertex indices 0 to n - 1.
+// Uses union by size and path compression so that a sequence of
+// unions and finds runs in nearly linear time.
+public final class UnionFind
+{
+	private final int[] parent;
+	// Only valid for roots: the number of vertices in that root's set
+	private final int[] size;
+	
+	private int numComponents;
+	
+	public UnionFind(int numVertices)
+	{
+		parent = new int[numVertices];
+		size = new int[numVertices];
+		for(int i = 0; i < numVertices; i++)
+		{
+			parent[i] = i;
+			size[i] = 1;
+		}
+		numComponents = numVertices;
+	}
+	
+	// Returns the root of the set containing v
+	public int find(int v)
+	{
+		int root = v;
+		while(parent[root] != root)
+		{
+			root = parent[root];
+		}
+		// Point everything on the path straight at the root
+		while(parent[v] != root)
+		{
+			int next = parent[v];
+			parent[v] = root;
+			v = next;
+		}
+		return root;
+	}
+	
+	// Merges the sets containing a and b.
+	// Returns the root of the merged set, or -1 if they were already in the same set.
+	public int union(int a, int b)
+	{
+		int rootA = find(a);
+		int rootB = find(b);
+		if(rootA == rootB)
+		{
+			return -1;
+		}
+		// Hang the smaller tree under the larger one
+		if(size[rootA] < size[rootB])
+		{
+			int temp = rootA;
+			rootA = rootB;
+			rootB = temp;
+		}
+		parent[rootB] = rootA;
+		size[rootA] += size[rootB];
+		numComponents--;
+		return rootA;
+	}
+	
+	// Returns the size of every set, in the order of their roots
+	public int[] getComponentSizes()
+	{
+		int[] sizes = new int[numComponents];
+		for(int i = 0, c = 0; i < parent.length; i++)
+		{
+			if(parent[i] == i)
+			{
+				sizes[c++] = size[i];
+			}
+		}
+		return sizes;
+	}
+	
+	// Getters
+	public int getComponentSize(int v) { return size[find(v)]; }
+	public int getNumComponents() { return numComponents; }
+	public int getNumVertices() { return parent.length; }
+}
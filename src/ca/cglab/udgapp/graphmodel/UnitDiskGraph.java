@@ -1,98 +1,923 @@
 package ca.cglab.udgapp.graphmodel;
 
-import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
+import ca.cglab.udgapp.metrics.GraphMetrics;
+import ca.cglab.udgapp.metrics.Stage;
+import ca.cglab.udgapp.metrics.ThreadAllocation;
+
+// The graph is stored in primitive arrays so that very large graphs fit in memory:
+// vertex i is at (xs[i], ys[i]), the edges are kept in an EdgeList and the neighbours
+// of vertex i are adjacency[offsets[i]] to adjacency[offsets[i + 1] - 1] (compressed sparse row).
+// Vertex and Edge objects are only created when getVertices() or getEdges() is called.
 public final class UnitDiskGraph
 {
-	private final ArrayList<Vertex> vertices;
-	private final ArrayList<Edge> edges;
-	private final ArrayList<Edge> freeEdges;
+	private static final double[] NO_COORDINATES = new double[0];
+	private static final int[] NO_INDICES = new int[0];
+	
+	// Number of vertices generated by one parallel task
+	private static final int GENERATION_CHUNK_SIZE = 1 << 14;
+	
+	// Smallest range of vertices given to one parallel edge task
+	private static final int MIN_EDGE_CHUNK_SIZE = 1024;
+	
+	// How many cheap loop iterations run between two checks for cancellation
+	private static final int CHECK_INTERVAL = 1024;
+	// How many vertices a component search takes off its queue between two checks
+	private static final int SEARCH_CHECK_INTERVAL = 4096;
+	
+	// Vertex positions
+	private double[] xs;
+	private double[] ys;
+	private int vertexCount;
+	
+	private final EdgeList edges;
+	
+	// Adjacency in compressed sparse row form, built from 'edges' when a search first needs it.
+	// Both are null until then, so building the edges and their components doesn't pay for it.
+	private int[] offsets;
+	private int[] adjacency;
+	
+	// Indexed by edge, set for every edge that crosses another edge.
+	// Threads testing different pairs can mark edges at the same time.
+	private AtomicBitSet intersectingEdges;
+	private int[] freeEdges;
+	
 	private final ArrayList<Path2D> allPaths;
 	
-	// Random number generator for vertex positions
-	private final Random random;
+	// Object views of the graph for the GUI, created on demand
+	private ArrayList<Vertex> vertexView;
+	private ArrayList<Edge> edgeView;
+	
+	// Vertex i is placed at RandomPoints.getX(seed, i), RandomPoints.getY(seed, i)
+	// unless the vertices are renumbered afterwards
+	private long seed;
+	
+	// The order new vertices are numbered in
+	private VertexOrder vertexOrder;
 	
 	private int numVertices;
-	private int numEdges;
 	private int numSuperFreeEdges;
 	
 	// Current distance threshold
 	private double maxDistance;
+	// squaredDistanceLimit(maxDistance), what the squared distances between vertices are compared with
+	private double maxSquaredDistance;
 	
 	private int numIntersectingEdges;
 	
+	// Connected components, kept up to date as edges are added
+	private UnionFind components;
+	
+	// When true, vertex pairs are found through a grid instead of comparing every pair
+	private boolean useSpatialIndex;
+	
+	// When true, the rectangle around every free edge is kept in 'allPaths' for drawing.
+	// Only meant for debugging since it keeps one Path2D per free edge.
+	private boolean recordPaths;
+	
+	// Number of threads used to build the graph, 1 means everything runs on the calling thread
+	private int parallelism;
+	private ForkJoinPool pool;
+	// The ids of the pool's threads, so their allocations can be counted
+	private final ArrayList<Long> poolThreadIds;
+	
+	// Time, allocations and work done in each stage of building the graph
+	private final GraphMetrics metrics;
+	
+	// Checked by the long loops, null if the work can't be cancelled
+	private CancellationToken cancellationToken;
+	// Told how far along the current stage is, can be null
+	private ProgressListener progressListener;
+	private Stage progressStage;
+	private long progressTotal;
+	private final AtomicLong progressDone;
+	
+	// Uses a new random seed, see getSeed() to reproduce the graph later
 	public UnitDiskGraph(int numVertices)
+	{
+		this(numVertices, RandomPoints.newSeed());
+	}
+	
+	public UnitDiskGraph(int numVertices, long seed)
 	{
 		this.numVertices = numVertices;
+		this.seed = seed;
 		
-		vertices = new ArrayList<Vertex>(numVertices);
-		edges = new ArrayList<Edge>(numVertices);
-		freeEdges = new ArrayList<Edge>(numVertices);
+		xs = NO_COORDINATES;
+		ys = NO_COORDINATES;
+		edges = new EdgeList(numVertices);
+		offsets = new int[1];
+		adjacency = NO_INDICES;
+		intersectingEdges = new AtomicBitSet(0);
+		freeEdges = NO_INDICES;
 		allPaths = new ArrayList<Path2D>();
+		components = new UnionFind(0);
 		
-		random = new Random();
+		useSpatialIndex = true;
+		vertexOrder = VertexOrder.NONE;
+		parallelism = 1;
+		poolThreadIds = new ArrayList<Long>();
+		metrics = new GraphMetrics();
+		progressDone = new AtomicLong();
 	}
 	
 	// Adds 'numVertices' vertices to the vertex list in random locations.
 	// The x,y coordinates are bounded between 0 and 1.
+	// The position of each vertex only depends on the seed and its index,
+	// so the same seed always gives the same vertices, with or without threads.
+	// Afterwards all the vertices are renumbered in the vertex order, see setVertexOrder().
+	// If it is cancelled the graph is left without any vertices.
 	public void createNewRandomVertices()
 	{
-		for(int i = 0; i < numVertices; i++)
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		
+		final int oldCount = vertexCount;
+		vertexCount += numVertices;
+		xs = Arrays.copyOf(xs, vertexCount);
+		ys = Arrays.copyOf(ys, vertexCount);
+		
+		beginProgress(Stage.VERTEX_GENERATION, numVertices);
+		try
+		{
+			runChunks((numVertices + GENERATION_CHUNK_SIZE - 1) / GENERATION_CHUNK_SIZE, new ChunkWork()
+			{
+				public void computeChunk(int chunk)
+				{
+					int start = oldCount + chunk * GENERATION_CHUNK_SIZE;
+					int end = Math.min(start + GENERATION_CHUNK_SIZE, vertexCount);
+					for(int i = start; i < end; i++)
+					{
+						xs[i] = RandomPoints.getX(seed, i);
+						ys[i] = RandomPoints.getY(seed, i);
+					}
+					checkpoint(end - start);
+				}
+			});
+			renumberVertices(vertexOrder);
+		}
+		catch(CancellationException e)
+		{
+			removeAllVertices();
+			throw e;
+		}
+		recordStage(Stage.VERTEX_GENERATION, startNanos, startBytes);
+		
+		// The adjacency arrays are sized by the number of vertices so the edges have to be recreated
+		removeAllEdges();
+	}
+	
+	// Renumbers all the vertices in the order they come along the curve. Vertices in the same
+	// cell of the curve's grid keep their order. The statistics don't depend on the numbering,
+	// but the loops run faster when neighbours are close together in memory.
+	// The edges refer to the old numbers so they are removed.
+	public void renumberVertices(VertexOrder order)
+	{
+		if(order == VertexOrder.NONE)
 		{
-			Vertex v = new Vertex(random.nextDouble(), random.nextDouble());
-			vertices.add(v);
-			//System.out.println(v);
+			return;
 		}
+		// The key goes in the high bits and the old index in the low 31 bits, so sorting
+		// the longs sorts by key and keeps the order of equal keys
+		long[] keys = new long[vertexCount];
+		for(int i = 0; i < vertexCount; i++)
+		{
+			keys[i] = (order.getKey(xs[i], ys[i]) << 31) | i;
+		}
+		Arrays.sort(keys);
+		checkCancelled();
+		
+		double[] sortedXs = new double[vertexCount];
+		double[] sortedYs = new double[vertexCount];
+		for(int i = 0; i < vertexCount; i++)
+		{
+			int old = (int) (keys[i] & Integer.MAX_VALUE);
+			sortedXs[i] = xs[old];
+			sortedYs[i] = ys[old];
+		}
+		xs = sortedXs;
+		ys = sortedYs;
+		removeAllEdges();
 	}
 	
-	// Compares the distance between each vertex.
 	// Adds an edge between two vertices if the Euclidean distance
 	// between them is at most the distance threshold.
+	// Both strategies produce the same edges in the same order.
+	// The components are merged straight from the edge list, the adjacency waits for a search.
+	// If it is cancelled the graph is left without any edges.
 	public void createNewConnectedEdges()
 	{
-		for(int i = 0; i < numVertices; i++)
+		try
 		{
-			Vertex first = vertices.get(i);
-			// Start j at i + 1 so that vertices are not compared with themselves
-			for(int j = i + 1; j < numVertices; j++)
+			long startNanos = System.nanoTime();
+			long startBytes = getAllocatedBytes();
+			beginProgress(Stage.EDGE_BUILD, vertexCount);
+			metrics.addPairComparisons(collectEdges(maxDistance, edges));
+			offsets = null;
+			adjacency = null;
+			invalidateViews();
+			metrics.recordEdgeCount(edges.size());
+			recordStage(Stage.EDGE_BUILD, startNanos, startBytes);
+			
+			startNanos = System.nanoTime();
+			startBytes = getAllocatedBytes();
+			int[] firsts = edges.getFirsts();
+			int[] seconds = edges.getSeconds();
+			int numEdges = edges.size();
+			beginProgress(Stage.COMPONENT_SEARCH, numEdges);
+			for(int e = 0; e < numEdges; e++)
 			{
-				Vertex second = vertices.get(j);
-				double distance = distanceBetweenVertices(first, second);
-				if(distance <= maxDistance)
+				components.union(firsts[e], seconds[e]);
+				if((e + 1) % (CHECK_INTERVAL * 64) == 0)
 				{
-					// Make both vertices see each other as neighbors
-					first.addNeighbour(second);
-					second.addNeighbour(first);
-					//System.out.println("Edge: ");
-					//System.out.println(first.toString() + " " + second.toString());
-					edges.add(new Edge(first, second, distance));
-					numEdges++;
+					checkpoint(CHECK_INTERVAL * 64);
 				}
 			}
+			checkpoint(numEdges % (CHECK_INTERVAL * 64));
+			recordStage(Stage.COMPONENT_SEARCH, startNanos, startBytes);
 		}
-		//System.out.println("Edges: " + numEdges);
-
+		catch(CancellationException e)
+		{
+			removeAllEdges();
+			throw e;
+		}
+	}
+	
+	// Sends every edge to the consumers as soon as it is found instead of storing it, so only O(n)
+	// memory is needed however many edges there are. The graph itself is left without edges.
+	// The vertices are visited grid cell by grid cell, row by row, with cells at least 'maxDistance'
+	// wide, and every edge is sent once from the earlier of its two cells. An edge sent while
+	// visiting row R therefore only reaches into row R + 1, which IntersectionCounter relies on.
+	// This always uses the grid and runs on the calling thread. Returns the number of edges.
+	public long streamNewConnectedEdges(EdgeConsumer... consumers)
+	{
+		removeAllEdges();
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		VertexGrid grid = new VertexGrid(xs, ys, vertexCount, maxDistance);
+		int cellsPerSide = grid.getCellsPerSide();
+		long numEdges = 0;
+		
+		beginProgress(Stage.EDGE_BUILD, cellsPerSide);
+		for(int row = 0; row < cellsPerSide; row++)
+		{
+			numEdges += streamRow(grid, row, consumers);
+			checkpoint(1);
+		}
+		for(EdgeConsumer consumer : consumers)
+		{
+			consumer.finish();
+		}
+		
+		recordStage(Stage.EDGE_BUILD, startNanos, startBytes);
+		return numEdges;
+	}
+	
+	// Sends the edges that streamNewConnectedEdges() finds from one grid row, returns how many
+	private long streamRow(VertexGrid grid, int row, EdgeConsumer[] consumers)
+	{
+		int cellsPerSide = grid.getCellsPerSide();
+		long numEdges = 0;
+		long comparisons = 0;
+		for(int column = 0; column < cellsPerSide; column++)
+		{
+			int cell = grid.getCell(column, row);
+			for(int p = grid.getCellStart(cell), pl = grid.getCellEnd(cell); p < pl; p++)
+			{
+				int i = grid.getItem(p);
+				
+				// The later vertices in the same cell
+				for(int q = p + 1; q < pl; q++)
+				{
+					numEdges += streamEdge(i, grid.getItem(q), consumers);
+				}
+				comparisons += pl - p - 1;
+				
+				// The cell to the right and the three cells below
+				for(int k = 0; k < 4; k++)
+				{
+					int c = column + (k == 0 ? 1 : k - 2);
+					int r = row + (k == 0 ? 0 : 1);
+					if(c < 0 || c >= cellsPerSide || r >= cellsPerSide)
+					{
+						continue;
+					}
+					int other = grid.getCell(c, r);
+					for(int q = grid.getCellStart(other), ql = grid.getCellEnd(other); q < ql; q++)
+					{
+						numEdges += streamEdge(i, grid.getItem(q), consumers);
+					}
+					comparisons += grid.getCellEnd(other) - grid.getCellStart(other);
+				}
+			}
+		}
+		metrics.addPairComparisons(comparisons);
+		return numEdges;
+	}
+	
+	// Sends the edge i-j to the consumers if it is short enough, returns 1 if it was sent
+	private int streamEdge(int i, int j, EdgeConsumer[] consumers)
+	{
+		double squared = squaredDistanceBetweenVertices(Math.min(i, j), Math.max(i, j));
+		if(squared > maxSquaredDistance)
+		{
+			return 0;
+		}
+		double distance = Math.sqrt(squared);
+		for(EdgeConsumer consumer : consumers)
+		{
+			consumer.acceptEdge(i, j, distance);
+		}
+		return 1;
+	}
+	
+	// Returns two edges of the graph for the current vertices and 'maxDistance' that cross, as the
+	// vertex indices { a1, a2, b1, b2 } with a1 < a2 and b1 < b2, or null if the graph is plane.
+	// Works straight from the vertices like streamNewConnectedEdges() and stops after the grid row
+	// where the first crossing turns up, so when crossings are common it only looks at a few rows.
+	// The stored edges are neither needed nor changed.
+	public int[] findIntersectingEdgePair()
+	{
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		VertexGrid grid = new VertexGrid(xs, ys, vertexCount, maxDistance);
+		int cellsPerSide = grid.getCellsPerSide();
+		IntersectionCounter counter = new IntersectionCounter(this, grid, false);
+		EdgeConsumer[] consumers = { counter };
+		
+		beginProgress(Stage.INTERSECTION_TEST, cellsPerSide);
+		for(int row = 0; row < cellsPerSide && counter.getFirstCrossing() == null; row++)
+		{
+			streamRow(grid, row, consumers);
+			checkpoint(1);
+		}
+		recordStage(Stage.INTERSECTION_TEST, startNanos, startBytes);
+		return counter.getFirstCrossing();
 	}
+	
+	public boolean hasIntersectingEdge()
+	{
+		return findIntersectingEdgePair() != null;
+	}
+	
+	// Returns k vertices of a connected component with at least k vertices, in the order a
+	// breadth-first search from the lowest such vertex reached them, or null if there is none.
+	// Searches straight from the vertices with a grid and stops as soon as k vertices are reached,
+	// so when large components are common it only looks at about k vertices.
+	// The stored edges are neither needed nor changed.
+	public int[] findComponentOfSizeAtLeast(int k)
+	{
+		if(k < 1) throw new IllegalArgumentException("k must be at least 1");
+		if(k > vertexCount)
+		{
+			return null;
+		}
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		VertexGrid grid = new VertexGrid(xs, ys, vertexCount, maxDistance);
+		int cellsPerSide = grid.getCellsPerSide();
+		boolean[] visited = new boolean[vertexCount];
+		// Only ever holds the current component, which is dropped once it runs out below k vertices
+		int[] queue = new int[k];
+		long comparisons = 0;
+		
+		beginProgress(Stage.COMPONENT_SEARCH, vertexCount);
+		try
+		{
+			for(int start = 0; start < vertexCount; start++)
+			{
+				if(visited[start])
+				{
+					continue;
+				}
+				visited[start] = true;
+				queue[0] = start;
+				int head = 0;
+				int tail = 1;
+				while(head < tail && tail < k)
+				{
+					int v = queue[head++];
+					// One search can go through a giant component, so it can't wait for the next start vertex
+					if(head % SEARCH_CHECK_INTERVAL == 0)
+					{
+						checkCancelled();
+					}
+					int column = grid.getColumn(xs[v]);
+					int row = grid.getRow(ys[v]);
+					int lastColumn = Math.min(cellsPerSide - 1, column + 1);
+					int lastRow = Math.min(cellsPerSide - 1, row + 1);
+					for(int r = Math.max(0, row - 1); r <= lastRow && tail < k; r++)
+					{
+						for(int c = Math.max(0, column - 1); c <= lastColumn && tail < k; c++)
+						{
+							int cell = grid.getCell(c, r);
+							for(int p = grid.getCellStart(cell), pl = grid.getCellEnd(cell); p < pl && tail < k; p++)
+							{
+								int u = grid.getItem(p);
+								comparisons++;
+								// The same test, with the same operand order, as the edge builder
+								if(!visited[u] && squaredDistanceBetweenVertices(Math.min(u, v), Math.max(u, v)) <= maxSquaredDistance)
+								{
+									visited[u] = true;
+									queue[tail++] = u;
+								}
+							}
+						}
+					}
+				}
+				if(tail >= k)
+				{
+					return queue;
+				}
+				if((start + 1) % CHECK_INTERVAL == 0)
+				{
+					checkpoint(CHECK_INTERVAL);
+				}
+			}
+			return null;
+		}
+		finally
+		{
+			metrics.addPairComparisons(comparisons);
+			recordStage(Stage.COMPONENT_SEARCH, startNanos, startBytes);
+		}
+	}
+	
+	public boolean hasComponentOfSizeAtLeast(int k)
+	{
+		return findComponentOfSizeAtLeast(k) != null;
+	}
+	
+	// Collects every pair of vertices at most 'maxRadius' apart, once, and sorts them by length
+	// so that a whole range of radii up to maxRadius can be looked at without rebuilding the graph.
+	// The sweep keeps using the current vertices even if new ones are created afterwards.
+	public RadiusSweep createRadiusSweep(double maxRadius)
+	{
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		EdgeList pairs = new EdgeList(vertexCount);
+		beginProgress(Stage.EDGE_BUILD, vertexCount);
+		metrics.addPairComparisons(collectEdges(maxRadius, pairs));
+		metrics.recordEdgeCount(pairs.size());
+		RadiusSweep sweep = new RadiusSweep(xs, ys, vertexCount, pairs, maxRadius);
+		recordStage(Stage.EDGE_BUILD, startNanos, startBytes);
+		return sweep;
+	}
+	
+	// Appends every pair of vertices at most 'distance' apart to 'out'.
+	// Returns the number of pairs whose distance was computed.
+	private long collectEdges(final double distance, EdgeList out)
+	{
+		final VertexGrid grid = useSpatialIndex ? new VertexGrid(xs, ys, vertexCount, distance) : null;
+		int chunkSize = Math.max(MIN_EDGE_CHUNK_SIZE, vertexCount / (parallelism * 8));
+		final int numChunks = (vertexCount + chunkSize - 1) / chunkSize;
+		
+		if(parallelism > 1 && numChunks > 1)
+		{
+			// Each chunk of vertices writes its edges to its own list. The lists are joined in
+			// chunk order, which gives exactly the same edge order as the sequential loop.
+			final EdgeList[] chunkEdges = new EdgeList[numChunks];
+			final long[] chunkComparisons = new long[numChunks];
+			final int size = chunkSize;
+			getPool().invoke(new ChunkTask(new ChunkWork()
+			{
+				public void computeChunk(int chunk)
+				{
+					int start = chunk * size;
+					int end = Math.min(start + size, vertexCount);
+					chunkEdges[chunk] = new EdgeList(end - start);
+					chunkComparisons[chunk] = createEdgesFrom(start, end, grid, distance, chunkEdges[chunk]);
+				}
+			}, 0, numChunks));
+			long comparisons = 0;
+			for(int c = 0; c < numChunks; c++)
+			{
+				out.addAll(chunkEdges[c]);
+				chunkEdges[c] = null;
+				comparisons += chunkComparisons[c];
+			}
+			return comparisons;
+		}
+		else
+		{
+			return createEdgesFrom(0, vertexCount, grid, distance, out);
+		}
+	}
+	
+	// Adds the edges from the vertices start to end - 1 to the vertices after them.
+	// Returns the number of pairs compared.
+	private long createEdgesFrom(int start, int end, VertexGrid grid, double distance, EdgeList out)
+	{
+		if(grid != null)
+		{
+			return createNewConnectedEdgesWithGrid(start, end, grid, distance, out);
+		}
+		else
+		{
+			return createNewConnectedEdgesBruteForce(start, end, distance, out);
+		}
+	}
+	
+	// Compares the distance between each vertex.
+	private long createNewConnectedEdgesBruteForce(int start, int end, double maxDistance, EdgeList out)
+	{
+		double limit = squaredDistanceLimit(maxDistance);
+		// Locals, so the coordinates don't have to be read from the fields again after every out.add()
+		double[] vertexXs = xs;
+		double[] vertexYs = ys;
+		int count = vertexCount;
+		long comparisons = 0;
+		for(int i = start; i < end; i++)
+		{
+			double x = vertexXs[i];
+			double y = vertexYs[i];
+			// Start j at i + 1 so that vertices are not compared with themselves.
+			// The inner loop only looks for the next vertex that is close enough and the rare edge
+			// is added outside it, which keeps it small enough for the JIT to unroll.
+			int j = i + 1;
+			while(j < count)
+			{
+				double squared = 0;
+				for(; j < count; j++)
+				{
+					double differenceX = vertexXs[j] - x;
+					double differenceY = vertexYs[j] - y;
+					squared = (differenceX * differenceX) + (differenceY * differenceY);
+					if(squared <= limit)
+					{
+						break;
+					}
+				}
+				if(j < count)
+				{
+					out.add(i, j, Math.sqrt(squared));
+					j++;
+				}
+			}
+			comparisons += count - i - 1;
+			// Every vertex is compared with all the later ones, so this checks often enough
+			checkpoint(1);
+		}
+		return comparisons;
+	}
+	
+	// Only compares each vertex with the vertices in the 3x3 block of grid cells around it.
+	// The cells are at least 'maxDistance' wide so no edge can be missed.
+	// The vertices of a cell are in increasing order, so the ones after i are the end of the cell
+	// and the loop over them doesn't have to check. It only compares squared distances.
+	private long createNewConnectedEdgesWithGrid(int start, int end, VertexGrid grid, double maxDistance, EdgeList out)
+	{
+		int cellsPerSide = grid.getCellsPerSide();
+		double limit = squaredDistanceLimit(maxDistance);
+		long comparisons = 0;
+		
+		int[] candidates = new int[16];
+		for(int i = start; i < end; i++)
+		{
+			double x = xs[i];
+			double y = ys[i];
+			int column = grid.getColumn(x);
+			int row = grid.getRow(y);
+			int numCandidates = 0;
+			
+			for(int r = Math.max(0, row - 1), rl = Math.min(cellsPerSide - 1, row + 1); r <= rl; r++)
+			{
+				for(int c = Math.max(0, column - 1), cl = Math.min(cellsPerSide - 1, column + 1); c <= cl; c++)
+				{
+					int cell = grid.getCell(c, r);
+					int p = grid.getCellStart(cell);
+					int pl = grid.getCellEnd(cell);
+					// Same rule as the brute force loop: only look at vertices after i
+					while(p < pl && grid.getItem(p) <= i)
+					{
+						p++;
+					}
+					comparisons += pl - p;
+					if(numCandidates + pl - p > candidates.length)
+					{
+						candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, numCandidates + pl - p));
+					}
+					for(; p < pl; p++)
+					{
+						int j = grid.getItem(p);
+						double differenceX = xs[j] - x;
+						double differenceY = ys[j] - y;
+						// Every vertex is written, but only kept if it is close enough
+						candidates[numCandidates] = j;
+						if((differenceX * differenceX) + (differenceY * differenceY) <= limit)
+						{
+							numCandidates++;
+						}
+					}
+				}
+			}
+			
+			// Sorting keeps the edges in the same order as the brute force loop
+			Arrays.sort(candidates, 0, numCandidates);
+			for(int k = 0; k < numCandidates; k++)
+			{
+				int j = candidates[k];
+				out.add(i, j, distanceBetweenVertices(i, j));
+			}
+			if((i - start + 1) % CHECK_INTERVAL == 0)
+			{
+				checkpoint(CHECK_INTERVAL);
+			}
+		}
+		checkpoint((end - start) % CHECK_INTERVAL);
+		return comparisons;
+	}
+	
+	// Runs the work for chunks 0 to numChunks - 1, on the pool if there is more than one thread
+	private void runChunks(int numChunks, ChunkWork work)
+	{
+		if(parallelism > 1 && numChunks > 1)
+		{
+			getPool().invoke(new ChunkTask(work, 0, numChunks));
+		}
+		else
+		{
+			for(int c = 0; c < numChunks; c++)
+			{
+				work.computeChunk(c);
+			}
+		}
+	}
+	
+	private ForkJoinPool getPool()
+	{
+		if(pool == null)
+		{
+			pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+			{
+				public ForkJoinWorkerThread newThread(ForkJoinPool p)
+				{
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+					synchronized(poolThreadIds)
+					{
+						poolThreadIds.add(thread.getId());
+					}
+					return thread;
+				}
+			}, null, false);
+		}
+		return pool;
+	}
+	
+	// Bytes allocated so far by the calling thread and the pool threads
+	private long getAllocatedBytes()
+	{
+		long bytes = ThreadAllocation.getCurrentThreadAllocatedBytes();
+		synchronized(poolThreadIds)
+		{
+			for(long id : poolThreadIds)
+			{
+				bytes += Math.max(0, ThreadAllocation.getAllocatedBytes(id));
+			}
+		}
+		return bytes;
+	}
+	
+	// Starts reporting the progress of a stage that has 'total' units of work
+	void beginProgress(Stage stage, long total)
+	{
+		progressStage = stage;
+		progressTotal = total;
+		progressDone.set(0);
+		if(progressListener != null)
+		{
+			progressListener.progressMade(stage.getLabel(), 0, total);
+		}
+	}
+	
+	// Called by the loops every so often with the units of work finished since the last call.
+	// Throws a CancellationException if the work was cancelled.
+	void checkpoint(long done)
+	{
+		checkCancelled();
+		if(progressListener != null)
+		{
+			progressListener.progressMade(progressStage.getLabel(), progressDone.addAndGet(done), progressTotal);
+		}
+	}
+	
+	// Only reads the token, so it is safe from any thread
+	void checkCancelled()
+	{
+		if(cancellationToken != null)
+		{
+			cancellationToken.throwIfCancelled();
+		}
+	}
+	
+	private void recordStage(Stage stage, long startNanos, long startBytes)
+	{
+		// A pool thread that died in between takes its count with it, so this can come out negative
+		metrics.recordStage(stage, System.nanoTime() - startNanos, Math.max(0, getAllocatedBytes() - startBytes));
+	}
+	
+	// The work done on one chunk of a range that is split across the pool
+	private interface ChunkWork
+	{
+		void computeChunk(int chunk);
+	}
+	
+	// Runs the work for every chunk from start to end - 1, splitting the range in half
+	// until a single chunk is left so that idle threads can steal the other halves.
+	@SuppressWarnings("serial")
+	private static final class ChunkTask extends RecursiveAction
+	{
+		private final ChunkWork work;
+		private final int start;
+		private final int end;
+		
+		ChunkTask(ChunkWork work, int start, int end)
+		{
+			this.work = work;
+			this.start = start;
+			this.end = end;
+		}
+		
+		protected void compute()
+		{
+			if(end - start == 1)
+			{
+				work.computeChunk(start);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new ChunkTask(work, start, middle), new ChunkTask(work, middle, end));
+		}
+	}
+	
+	// Builds the adjacency if the edges changed since it was last built. Synchronized because
+	// several searches can start on the same graph at once.
+	private synchronized void ensureAdjacency()
+	{
+		if(offsets == null)
+		{
+			buildAdjacency();
+		}
+	}
+	
+	// Builds the compressed sparse row adjacency from the edge list.
+	// The neighbours of each vertex end up in the order their edges were added.
+	// Nothing is kept if it is cancelled.
+	private void buildAdjacency()
+	{
+		int numEdges = edges.size();
+		int[] firsts = edges.getFirsts();
+		int[] seconds = edges.getSeconds();
+		
+		int[] offsets = new int[vertexCount + 1];
+		for(int e = 0; e < numEdges; e++)
+		{
+			offsets[firsts[e] + 1]++;
+			offsets[seconds[e] + 1]++;
+		}
+		checkCancelled();
+		for(int i = 0; i < vertexCount; i++)
+		{
+			offsets[i + 1] += offsets[i];
+		}
+		
+		int[] adjacency = new int[offsets[vertexCount]];
+		int[] next = Arrays.copyOf(offsets, vertexCount);
+		for(int e = 0; e < numEdges; e++)
+		{
+			adjacency[next[firsts[e]]++] = seconds[e];
+			adjacency[next[seconds[e]]++] = firsts[e];
+			if((e + 1) % (CHECK_INTERVAL * 64) == 0)
+			{
+				checkCancelled();
+			}
+		}
+		this.adjacency = adjacency;
+		this.offsets = offsets;
+	}
+	
+	// Reads a graph written by save(). The edges are only there if they were saved,
+	// and the intersecting and super free edges have to be determined again.
+	public static UnitDiskGraph load(File file) throws IOException
+	{
+		return GraphFile.read(file);
+	}
+	
+	// Writes the vertices, the distance threshold and the seed to a file, and the edges if includeEdges is set.
+	// Without the edges the file is about a third of the size and the edges are rebuilt after loading.
+	public void save(File file, boolean includeEdges) throws IOException
+	{
+		GraphFile.write(file, this, includeEdges);
+	}
+	
+	// Replaces the graph with the given vertices and, if 'offsets' isn't null, the edges in the
+	// compressed sparse row form that buildAdjacency() makes. The arrays are kept, not copied.
+	void restore(double[] xs, double[] ys, int[] offsets, int[] adjacency)
+	{
+		removeAllVertices();
+		this.xs = xs;
+		this.ys = ys;
+		vertexCount = xs.length;
+		numVertices = vertexCount;
+		removeAllEdges();
+		if(offsets == null)
+		{
+			return;
+		}
+		
+		if(offsets.length != vertexCount + 1 || offsets[0] != 0 || offsets[vertexCount] != adjacency.length)
+		{
+			throw new IllegalArgumentException("The adjacency offsets don't match the vertices");
+		}
+		for(int i = 0; i < vertexCount; i++)
+		{
+			if(offsets[i + 1] < offsets[i])
+			{
+				throw new IllegalArgumentException("The adjacency offsets aren't increasing");
+			}
+		}
+		// Every edge is in the list of both its vertices. Its first vertex is the lower one,
+		// and the neighbour lists are sorted, so this gives the edges in their original order.
+		try
+		{
+			for(int i = 0; i < vertexCount; i++)
+			{
+				for(int p = offsets[i], l = offsets[i + 1]; p < l; p++)
+				{
+					int j = adjacency[p];
+					if(j < 0 || j >= vertexCount)
+					{
+						throw new IllegalArgumentException("Vertex " + i + " has a neighbour that doesn't exist");
+					}
+					if(j == i)
+					{
+						throw new IllegalArgumentException("Vertex " + i + " is its own neighbour");
+					}
+					if(p > offsets[i] && j <= adjacency[p - 1])
+					{
+						throw new IllegalArgumentException("The neighbours of vertex " + i + " aren't sorted");
+					}
+					// The list of j may not have been checked yet, but a search in an unsorted list
+					// can only miss, and the list is rejected when its turn comes anyway
+					if(j > i && Arrays.binarySearch(adjacency, offsets[j], offsets[j + 1], i) < 0)
+					{
+						throw new IllegalArgumentException("Vertex " + j + " is missing its neighbour " + i);
+					}
+					if(j > i)
+					{
+						edges.add(i, j, distanceBetweenVertices(i, j));
+						components.union(i, j);
+					}
+				}
+			}
+			// Every edge up from i was found in the list of its other vertex,
+			// so if there are no other entries the lists are symmetric
+			if(edges.size() * 2 != adjacency.length)
+			{
+				throw new IllegalArgumentException("The adjacency isn't symmetric");
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			removeAllEdges();
+			throw e;
+		}
+		this.offsets = offsets;
+		this.adjacency = adjacency;
+		metrics.recordEdgeCount(edges.size());
+	}
+	
 	// Removed all vertices and edges in the graph
 	public void removeAllVertices()
 	{
-		vertices.clear();
+		vertexCount = 0;
+		xs = NO_COORDINATES;
+		ys = NO_COORDINATES;
 		removeAllEdges();
 	}
 	
 	// Only removes the edges in the graph
 	public void removeAllEdges()
 	{
-		for(int i = 0, l = vertices.size(); i < l; i++)
-		{
-			vertices.get(i).getNeighbours().clear();
-		}
 		edges.clear();
-		freeEdges.clear();
-		numEdges = numIntersectingEdges = numSuperFreeEdges = 0;
+		offsets = new int[vertexCount + 1];
+		adjacency = NO_INDICES;
+		intersectingEdges = new AtomicBitSet(0);
+		freeEdges = NO_INDICES;
+		allPaths.clear();
+		components = new UnionFind(vertexCount);
+		numIntersectingEdges = numSuperFreeEdges = 0;
+		invalidateViews();
 	}
 	
 	// Helper method
@@ -104,142 +929,467 @@ public final class UnitDiskGraph
 		return Math.sqrt((differenceX * differenceX) + (differenceY * differenceY));
 	}
 	
+	// Same as above, using vertex indices
+	public double distanceBetweenVertices(int first, int second)
+	{
+		return Math.sqrt(squaredDistanceBetweenVertices(first, second));
+	}
+	
+	// The square of the above. Comparing it with maxSquaredDistance gives the same answer as
+	// comparing the distance with maxDistance, so only the edges that are kept need a square root.
+	double squaredDistanceBetweenVertices(int first, int second)
+	{
+		double differenceX = xs[second] - xs[first];
+		double differenceY = ys[second] - ys[first];
+		
+		return (differenceX * differenceX) + (differenceY * differenceY);
+	}
+	
+	// The largest squared distance whose square root is at most 'distance', so that
+	// squared <= squaredDistanceLimit(distance) exactly when Math.sqrt(squared) <= distance.
+	// Just squaring 'distance' can be a rounding step off in either direction.
+	static double squaredDistanceLimit(double distance)
+	{
+		if(!(distance >= 0))
+		{
+			// Negative or NaN, nothing is close enough
+			return -1;
+		}
+		if(distance == Double.POSITIVE_INFINITY)
+		{
+			return distance;
+		}
+		double limit = Math.min(distance * distance, Double.MAX_VALUE);
+		while(Math.sqrt(limit) > distance)
+		{
+			limit = Math.nextAfter(limit, Double.NEGATIVE_INFINITY);
+		}
+		while(Math.sqrt(Math.nextUp(limit)) <= distance)
+		{
+			limit = Math.nextUp(limit);
+		}
+		return limit;
+	}
+	
+	// Marks every edge that crosses another edge, counts them
+	// and then collects the remaining free edges.
+	// Edges that share an endpoint are not counted as intersecting.
+	// If it is cancelled no edge is marked as intersecting.
 	public void determineIntersectingEdges()
 	{
-		numIntersectingEdges = 0;
-
-		for(int i = 0, l = edges.size(); i < l; i++)
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		final int numEdges = edges.size();
+		intersectingEdges = new AtomicBitSet(numEdges);
+		
+		final long[] chunkTests;
+		try
 		{
-			Edge first = edges.get(i);
-			for(int j = i + 1; j < l; j++)
+			if(useSpatialIndex)
 			{
-				Edge second = edges.get(j);
-				
-				if(first.getFirst() == second.getFirst() || first.getFirst() == second.getSecond()
-				|| first.getSecond() == second.getFirst() || first.getSecond() == second.getSecond())
+				final EdgeGrid grid = new EdgeGrid(xs, ys, edges, maxDistance, cancellationToken);
+				final int numChunks = Math.min(grid.getCellsPerSide(), parallelism * 8);
+				chunkTests = new long[numChunks];
+				beginProgress(Stage.INTERSECTION_TEST, grid.getCellsPerSide());
+				runChunks(numChunks, new ChunkWork()
 				{
-					// Don't count this as an intersection
-					continue;
-				}
-				
-				if(Line2D.linesIntersect(first.getFirst().getX(), first.getFirst().getY(),
-										 first.getSecond().getX(), first.getSecond().getY(),
-										 second.getFirst().getX(), second.getFirst().getY(),
-										 second.getSecond().getX(), second.getSecond().getY()))
+					public void computeChunk(int chunk)
+					{
+						int rows = grid.getCellsPerSide();
+						chunkTests[chunk] = markIntersectingEdgesWithGrid(grid, chunk * rows / numChunks, (chunk + 1) * rows / numChunks);
+					}
+				});
+			}
+			else
+			{
+				final int numChunks = Math.max(1, Math.min(numEdges, parallelism * 8));
+				chunkTests = new long[numChunks];
+				beginProgress(Stage.INTERSECTION_TEST, numEdges);
+				runChunks(numChunks, new ChunkWork()
 				{
-					first.setIntersecting(true);
-					second.setIntersecting(true);
-				}
+					public void computeChunk(int chunk)
+					{
+						chunkTests[chunk] = markIntersectingEdgesBruteForce(getPairChunkStart(chunk, numChunks, numEdges),
+																			getPairChunkStart(chunk + 1, numChunks, numEdges));
+					}
+				});
 			}
 		}
-
+		catch(CancellationException e)
+		{
+			intersectingEdges = new AtomicBitSet(numEdges);
+			freeEdges = NO_INDICES;
+			numIntersectingEdges = numSuperFreeEdges = 0;
+			throw e;
+		}
+		for(long tests : chunkTests)
+		{
+			metrics.addIntersectionTests(tests);
+		}
+		
 		// Now go through the list of edges and count how many are intersecting
-		for(int i = 0, l = edges.size(); i < l; i++)
+		numIntersectingEdges = intersectingEdges.cardinality();
+		freeEdges = new int[numEdges - numIntersectingEdges];
+		for(int e = 0, f = 0; e < numEdges; e++)
 		{
-			if(edges.get(i).isIntersecting())
+			if(!intersectingEdges.get(e))
 			{
-				numIntersectingEdges++;
-				edges.get(i).setIntersecting(false);
+				freeEdges[f++] = e;
 			}
-			else
+		}
+		recordStage(Stage.INTERSECTION_TEST, startNanos, startBytes);
+		
+		determineSuperFreeEdges();
+	}
+	
+	// The first edge of a chunk when the edges are split into chunks with about the same number of pairs.
+	// Edge i is tested against the m - i - 1 edges after it, so the first t of T chunks have to end at
+	// m * (1 - sqrt(1 - t / T)) for each chunk to get 1 / T of the pairs. Equal ranges of edges would
+	// leave most of the pairs to the first chunks and one thread working long after the others.
+	static int getPairChunkStart(int chunk, int numChunks, int numEdges)
+	{
+		if(chunk >= numChunks)
+		{
+			return numEdges;
+		}
+		return (int) (numEdges * (1 - Math.sqrt(1 - (double) chunk / numChunks)));
+	}
+	
+	// Tests every edge from start to end - 1 against every edge after it.
+	// Returns the number of pairs tested.
+	private long markIntersectingEdgesBruteForce(int start, int end)
+	{
+		long tests = 0;
+		for(int i = start, l = edges.size(); i < end; i++)
+		{
+			tests += l - i - 1;
+			for(int j = i + 1; j < l; j++)
 			{
-				freeEdges.add(edges.get(i));
+				if(edgesIntersect(i, j))
+				{
+					intersectingEdges.set(i);
+					intersectingEdges.set(j);
+				}
 			}
+			checkpoint(1);
+		}
+		return tests;
+	}
+	
+	// Only tests pairs of edges whose bounding boxes share a grid cell in the given rows.
+	// Edges are at most 'maxDistance' long so each one covers at most 2x2 cells.
+	private long markIntersectingEdgesWithGrid(EdgeGrid grid, int startRow, int endRow)
+	{
+		long tests = 0;
+		EdgeGrid.CandidatePairTester tester = new EdgeGrid.CandidatePairTester()
+		{
+			public void test(int i, int j)
+			{
+				intersectingEdges.set(i);
+				intersectingEdges.set(j);
+			}
+		};
+		// One row at a time so cancellation is noticed quickly
+		for(int row = startRow; row < endRow; row++)
+		{
+			tests += grid.forEachIntersectingPair(row, row + 1, tester);
+			checkpoint(1);
+		}
+		return tests;
+	}
+	
+	// Helper method
+	public static boolean edgesIntersect(Edge first, Edge second)
+	{
+		if(first.getFirst() == second.getFirst() || first.getFirst() == second.getSecond()
+		|| first.getSecond() == second.getFirst() || first.getSecond() == second.getSecond())
+		{
+			// Don't count this as an intersection
+			return false;
 		}
 		
-		determineSuperFreeEdges();
+		return SegmentIntersection.intersect(first.getFirst().getX(), first.getFirst().getY(),
+											 first.getSecond().getX(), first.getSecond().getY(),
+											 second.getFirst().getX(), second.getFirst().getY(),
+											 second.getSecond().getX(), second.getSecond().getY());
+	}
+	
+	// Same as above, using edge indices
+	public boolean edgesIntersect(int first, int second)
+	{
+		return edgesIntersect(xs, ys, edges.getFirst(first), edges.getSecond(first),
+							  edges.getFirst(second), edges.getSecond(second));
+	}
+	
+	// Same as above, for the edges a1-a2 and b1-b2 between the given vertices
+	static boolean edgesIntersect(double[] xs, double[] ys, int a1, int a2, int b1, int b2)
+	{
+		if(a1 == b1 || a1 == b2 || a2 == b1 || a2 == b2)
+		{
+			// Don't count this as an intersection
+			return false;
+		}
+		
+		return SegmentIntersection.intersect(xs[a1], ys[a1], xs[a2], ys[a2], xs[b1], ys[b1], xs[b2], ys[b2]);
 	}
 	
+	// A free edge is super free if no other vertex lies inside the rectangle
+	// that extends 'maxDistance' to both sides of the edge.
+	// If it is cancelled no edge is counted as super free.
 	public void determineSuperFreeEdges()
 	{
-		Path2D path = new Path2D.Double();
-		numSuperFreeEdges = 0;
-		for(int i = 0; i < freeEdges.size(); i++)
-		{
-			Edge freeEdge = freeEdges.get(i);
-			boolean isSuperFree = false;
-			Vertex v1 = freeEdge.getFirst();
-			Vertex v2 = freeEdge.getSecond();
-			// Angle relative to the horizontal
-			double angle1 = Math.acos(Math.abs(v1.getX() - v2.getX()) / freeEdge.getWeight());
-			double angle2 = Math.PI - (Math.PI / 2) - angle1;
-			double angle3 = (Math.PI / 2) - angle2;
-			double xDiff = maxDistance * Math.sin(angle3);
-			double yDiff = maxDistance * Math.cos(angle3);
-			double x1 = v1.getX();
-			double y1 = v1.getY();
-			double x2 = v2.getX();
-			double y2 = v2.getY();
-			
-			if(y1 <= y2)
+		long startNanos = System.nanoTime();
+		long startBytes = getAllocatedBytes();
+		final VertexGrid grid = useSpatialIndex ? new VertexGrid(xs, ys, vertexCount, maxDistance) : null;
+		beginProgress(Stage.SUPER_FREE_TEST, freeEdges.length);
+		try
+		{
+			if(recordPaths)
+			{
+				// 'allPaths' is filled in order, so this stays on one thread
+				numSuperFreeEdges = countSuperFreeEdges(0, freeEdges.length, grid);
+			}
+			else
 			{
-				if(x1 <= x2)
+				final int numChunks = Math.max(1, Math.min(freeEdges.length, parallelism * 8));
+				final int[] chunkCounts = new int[numChunks];
+				runChunks(numChunks, new ChunkWork()
 				{
-					path.moveTo(x1 - xDiff, y1 + yDiff);
-					path.lineTo(x2 - xDiff, y2 + yDiff);
-					path.lineTo(x2 + xDiff, y2 - yDiff);
-					path.lineTo(x1 + xDiff, y1 - yDiff);
-				}
-				else if(x2 <= x1)
+					public void computeChunk(int chunk)
+					{
+						int start = (int) (chunk * (long) freeEdges.length / numChunks);
+						int end = (int) ((chunk + 1) * (long) freeEdges.length / numChunks);
+						chunkCounts[chunk] = countSuperFreeEdges(start, end, grid);
+					}
+				});
+				numSuperFreeEdges = 0;
+				for(int count : chunkCounts)
 				{
-					path.moveTo(x2 + xDiff, y2 + yDiff);
-					path.lineTo(x1 + xDiff, y1 + yDiff);
-					path.lineTo(x1 - xDiff, y1 - yDiff);
-					path.lineTo(x2 - xDiff, y2 - yDiff);
+					numSuperFreeEdges += count;
 				}
 			}
-			else if(y2 <= y1)
+		}
+		catch(CancellationException e)
+		{
+			numSuperFreeEdges = 0;
+			allPaths.clear();
+			throw e;
+		}
+		recordStage(Stage.SUPER_FREE_TEST, startNanos, startBytes);
+	}
+	
+	// Counts the super free edges among freeEdges[start] to freeEdges[end - 1].
+	// Uses the grid if there is one and otherwise tests every vertex.
+	private int countSuperFreeEdges(int start, int end, VertexGrid grid)
+	{
+		EdgeRectangle rectangle = new EdgeRectangle();
+		int count = 0;
+		for(int i = start; i < end; i++)
+		{
+			int freeEdge = freeEdges[i];
+			boolean isSuperFree;
+			if(grid != null)
 			{
-				if(x1 <= x2)
-				{
-					path.moveTo(x1 + xDiff, y1 + yDiff);
-					path.lineTo(x2 + xDiff, y2 + yDiff);
-					path.lineTo(x2 - xDiff, y2 - yDiff);
-					path.lineTo(x1 - xDiff, y1 - yDiff);
-				}
-				else if(x2 <= x1)
+				isSuperFree = isSuperFreeWithGrid(freeEdge, grid, rectangle);
+			}
+			else
+			{
+				isSuperFree = isSuperFreeBruteForce(freeEdge, rectangle);
+			}
+			if(recordPaths)
+			{
+				allPaths.add(createRectanglePath(rectangle));
+			}
+			if(isSuperFree)
+			{
+				count++;
+			}
+			// The brute force test looks at every vertex so it checks after every edge
+			if(grid == null || (i - start + 1) % CHECK_INTERVAL == 0)
+			{
+				checkpoint(grid == null ? 1 : CHECK_INTERVAL);
+			}
+		}
+		if(grid != null)
+		{
+			checkpoint((end - start) % CHECK_INTERVAL);
+		}
+		return count;
+	}
+	
+	// Tests every vertex against the rectangle, which is left set to the edge's
+	private boolean isSuperFreeBruteForce(int freeEdge, EdgeRectangle rectangle)
+	{
+		int v1 = edges.getFirst(freeEdge);
+		int v2 = edges.getSecond(freeEdge);
+		rectangle.set(xs[v1], ys[v1], xs[v2], ys[v2], edges.getWeight(freeEdge), maxDistance);
+		for(int j = 0; j < vertexCount; j++)
+		{
+			if(v1 != j && v2 != j)
+			{
+				if(rectangle.contains(xs[j], ys[j]))
 				{
-					path.moveTo(x2 - xDiff, y2 + yDiff);
-					path.lineTo(x1 - xDiff, y1 + yDiff);
-					path.lineTo(x1 + xDiff, y1 - yDiff);
-					path.lineTo(x2 + xDiff, y2 - yDiff);
+					return false;
 				}
 			}
-			
-			allPaths.add(path);
-			for(int j = 0; j < vertices.size(); j++)
+		}
+		return true;
+	}
+	
+	// Only tests the vertices in the grid cells covered by the bounding box of the rectangle
+	private boolean isSuperFreeWithGrid(int freeEdge, VertexGrid grid, EdgeRectangle rectangle)
+	{
+		return isSuperFreeWithGrid(xs, ys, edges.getFirst(freeEdge), edges.getSecond(freeEdge),
+								   edges.getWeight(freeEdge), maxDistance, grid, rectangle);
+	}
+	
+	// Same as above for the edge v1-v2 of the given length and a rectangle 'distance' to both sides.
+	// The rectangle is left set to the edge's.
+	static boolean isSuperFreeWithGrid(double[] xs, double[] ys, int v1, int v2, double length,
+									   double distance, VertexGrid grid, EdgeRectangle rectangle)
+	{
+		rectangle.set(xs[v1], ys[v1], xs[v2], ys[v2], length, distance);
+		for(int r = grid.getRow(rectangle.getMinY()), rl = grid.getRow(rectangle.getMaxY()); r <= rl; r++)
+		{
+			for(int c = grid.getColumn(rectangle.getMinX()), cl = grid.getColumn(rectangle.getMaxX()); c <= cl; c++)
 			{
-				Vertex other = vertices.get(j);
-				if(v1 != other && v2 != other)
+				int cell = grid.getCell(c, r);
+				for(int p = grid.getCellStart(cell), pl = grid.getCellEnd(cell); p < pl; p++)
 				{
-					if(path.contains(other.getX(), other.getY()))
+					int j = grid.getItem(p);
+					if(v1 != j && v2 != j && rectangle.contains(xs[j], ys[j]))
 					{
-						isSuperFree = false;
-						break;
+						return false;
 					}
 				}
-				isSuperFree = true;
 			}
-			path = new Path2D.Double();
-			if(isSuperFree)
+		}
+		return true;
+	}
+	
+	// A Path2D of the rectangle, only for drawing
+	private static Path2D createRectanglePath(EdgeRectangle rectangle)
+	{
+		double[] corners = new double[8];
+		rectangle.getCorners(corners);
+		Path2D path = new Path2D.Double();
+		path.moveTo(corners[0], corners[1]);
+		path.lineTo(corners[2], corners[3]);
+		path.lineTo(corners[4], corners[5]);
+		path.lineTo(corners[6], corners[7]);
+		return path;
+	}
+	
+	// Returns the vertices as objects, with their neighbour lists filled in
+	public ArrayList<Vertex> getVertices()
+	{
+		if(vertexView == null)
+		{
+			ensureAdjacency();
+			ArrayList<Vertex> view = new ArrayList<Vertex>(vertexCount);
+			for(int i = 0; i < vertexCount; i++)
 			{
-				numSuperFreeEdges++;
+				view.add(new Vertex(i, xs[i], ys[i]));
 			}
+			for(int i = 0; i < vertexCount; i++)
+			{
+				Vertex v = view.get(i);
+				for(int p = offsets[i], l = offsets[i + 1]; p < l; p++)
+				{
+					v.addNeighbour(view.get(adjacency[p]));
+				}
+			}
+			vertexView = view;
 		}
-		
+		return vertexView;
+	}
+	
+	// Returns the edges as objects that refer to the vertices from getVertices()
+	public ArrayList<Edge> getEdges()
+	{
+		if(edgeView == null)
+		{
+			ArrayList<Vertex> vertices = getVertices();
+			ArrayList<Edge> view = new ArrayList<Edge>(edges.size());
+			for(int e = 0, l = edges.size(); e < l; e++)
+			{
+				view.add(new Edge(vertices.get(edges.getFirst(e)), vertices.get(edges.getSecond(e)), edges.getWeight(e)));
+			}
+			edgeView = view;
+		}
+		return edgeView;
+	}
+	
+	private void invalidateViews()
+	{
+		vertexView = null;
+		edgeView = null;
 	}
 	
 	// Getters/setters
-	public void setMaxDistance(double value) { maxDistance = value; }
 	public void setNumVertices(int n) { numVertices = n; }
+	// Only affects vertices created after this call
+	public void setSeed(long value) { seed = value; }
+	public void setUseSpatialIndex(boolean b) { useSpatialIndex = b; }
+	// Only affects vertices created after this call, see renumberVertices() for the current ones
+	public void setVertexOrder(VertexOrder order) { vertexOrder = order; }
+	public void setRecordPaths(boolean b) { recordPaths = b; }
+	// Null means the work can't be cancelled
+	public void setCancellationToken(CancellationToken token) { cancellationToken = token; }
+	// Null means no progress is reported
+	public void setProgressListener(ProgressListener listener) { progressListener = listener; }
+	
+	public void setMaxDistance(double value)
+	{
+		maxDistance = value;
+		maxSquaredDistance = squaredDistanceLimit(value);
+	}
+	
+	// The number of threads used to build the graph
+	public void setParallelism(int threads)
+	{
+		if(threads < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+		if(threads != parallelism && pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+			synchronized(poolThreadIds)
+			{
+				poolThreadIds.clear();
+			}
+		}
+		parallelism = threads;
+	}
 	
-	public ArrayList<Vertex> getVertices() { return vertices; }
-	public ArrayList<Edge> getEdges() { return edges; }
 	public ArrayList<Path2D> getAllPaths() { return allPaths; }
+	public UnionFind getComponents() { return components; }
 	public double getMaxDistance() { return maxDistance; }
 	public int getNumVertices() { return numVertices; }
-	public int getNumEdges() { return numEdges; }
+	public long getSeed() { return seed; }
+	public int getNumEdges() { return edges.size(); }
 	public int getNumFreeEdges() { return getNumEdges() - numIntersectingEdges; }
 	public int getNumIntersectingEdges() { return numIntersectingEdges; }
 	public int getNumSuperFreeEdges() { return numSuperFreeEdges; }
+	public boolean isUsingSpatialIndex() { return useSpatialIndex; }
+	public VertexOrder getVertexOrder() { return vertexOrder; }
+	public int getParallelism() { return parallelism; }
+	public GraphMetrics getMetrics() { return metrics; }
+	
+	// Primitive access to the graph
+	public int getVertexCount() { return vertexCount; }
+	public double getX(int v) { return xs[v]; }
+	public double getY(int v) { return ys[v]; }
+	public int getDegree(int v)
+	{
+		int[] offsets = getOffsets();
+		return offsets[v + 1] - offsets[v];
+	}
+	public EdgeList getEdgeList() { return edges; }
+	public boolean isIntersecting(int edge) { return intersectingEdges.get(edge); }
+	
+	// The arrays themselves, not copies, for the algorithms in this package
+	double[] getXs() { return xs; }
+	double[] getYs() { return ys; }
+	int[] getOffsets() { ensureAdjacency(); return offsets; }
+	int[] getAdjacency() { ensureAdjacency(); return adjacency; }
 }
@@ -5,22 +5,28 @@ import java.util.ArrayList;
 
 public final class Vertex
 {
+	// Index of this vertex in its UnitDiskGraph, or -1 if it isn't part of one
+	private final int index;
+	
 	// Position components
 	private double x;
 	private double y;
 	
-	private boolean visited;
-	
 	// Each vertex maintains a list of its neighbors as undirected edges
 	private final ArrayList<Vertex> neighbours;
 	
 	public Vertex(double x, double y)
 	{
+		this(-1, x, y);
+	}
+	
+	public Vertex(int index, double x, double y)
+	{
+		this.index = index;
 		this.x = x;
 		this.y = y;
 		
 		neighbours = new ArrayList<Vertex>();
-		visited = false;
 	}
 	
 	// Getters/setters
@@ -29,9 +35,7 @@ public final class Vertex
 	
 	public ArrayList<Vertex> getNeighbours() { return neighbours; }
 	
-	public boolean isVisited() { return visited; }
-	public void setVisited(boolean b) { visited = b; }
-	
+	public int getIndex() { return index; }
 	public double getX() { return x; }
 	public double getY() { return y; }
 	public Point2D getPosition()
@@ -0,0 +1,83 @@
+package ca.cglab.udgapp.graphmodel;
+
+// A uniform grid over the unit square that buckets vertex indices by cell.
+// The cell side is at least 'cellSize', so every vertex within distance 'cellSize'
+// of a vertex lies in the 3x3 block of cells around that vertex's cell.
+public final class VertexGrid
+{
+	private final int cellsPerSide;
+	
+	// Vertex indices sorted by cell. The indices of the vertices in cell c
+	// are found in cellItems[cellStart[c]] to cellItems[cellStart[c + 1] - 1],
+	// in increasing order.
+	private final int[] cellStart;
+	private final int[] cellItems;
+	
+	public VertexGrid(double[] xs, double[] ys, int numVertices, double cellSize)
+	{
+		cellsPerSide = determineCellsPerSide(cellSize, numVertices);
+		
+		int numCells = cellsPerSide * cellsPerSide;
+		cellStart = new int[numCells + 1];
+		cellItems = new int[numVertices];
+		
+		// Counting sort of the vertices by cell
+		int[] cellOfVertex = new int[numVertices];
+		for(int i = 0; i < numVertices; i++)
+		{
+			int cell = getCell(getColumn(xs[i]), getRow(ys[i]));
+			cellOfVertex[i] = cell;
+			cellStart[cell + 1]++;
+		}
+		for(int c = 0; c < numCells; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+		int[] next = new int[numCells];
+		System.arraycopy(cellStart, 0, next, 0, numCells);
+		for(int i = 0; i < numVertices; i++)
+		{
+			cellItems[next[cellOfVertex[i]]++] = i;
+		}
+	}
+	
+	// Only the layout of a grid over 'numItems' vertices, with no vertices in it.
+	// DynamicUnitDiskGraph keeps the vertices in each cell itself because they move.
+	VertexGrid(double cellSize, int numItems)
+	{
+		cellsPerSide = determineCellsPerSide(cellSize, numItems);
+		cellStart = new int[cellsPerSide * cellsPerSide + 1];
+		cellItems = new int[0];
+	}
+	
+	// The cells can't be smaller than 'cellSize', and there is no point in having
+	// more cells than items, so at most about sqrt(n) cells are used along each side.
+	static int determineCellsPerSide(double cellSize, int numItems)
+	{
+		double maxCells = Math.ceil(Math.sqrt(numItems));
+		double cells = Math.floor(1 / cellSize);
+		if(!(cells < maxCells))
+		{
+			// Also catches cellSize == 0 and NaN
+			cells = maxCells;
+		}
+		return (int) Math.max(1, cells);
+	}
+	
+	public int getColumn(double x) { return clamp((int) (x * cellsPerSide)); }
+	public int getRow(double y) { return clamp((int) (y * cellsPerSide)); }
+	public int getCell(int column, int row) { return row * cellsPerSide + column; }
+	
+	private int clamp(int index)
+	{
+		if(index < 0) return 0;
+		if(index >= cellsPerSide) return cellsPerSide - 1;
+		return index;
+	}
+	
+	// Getters
+	public int getCellsPerSide() { return cellsPerSide; }
+	public int getCellStart(int cell) { return cellStart[cell]; }
+	public int getCellEnd(int cell) { return cellStart[cell + 1]; }
+	public int getItem(int position) { return cellItems[position]; }
+}
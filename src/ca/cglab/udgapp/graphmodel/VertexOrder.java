@@ -0,0 +1,78 @@
+package ca.cglab.udgapp.graphmodel;
+
+// The orders the vertices of a graph can be numbered in, see UnitDiskGraph.setVertexOrder().
+// Numbering the vertices along a space filling curve puts vertices that are close in the plane
+// close together in the arrays as well, so the loops over neighbours, the breadth first search
+// and the rectangle tests mostly find what they need in the cache.
+public enum VertexOrder
+{
+	// The order the vertices were generated in
+	NONE
+	{
+		long getKey(int x, int y) { return 0; }
+	},
+	// Z-order, which interleaves the bits of the two coordinates
+	MORTON
+	{
+		long getKey(int x, int y) { return spreadBits(x) | (spreadBits(y) << 1); }
+	},
+	// Hilbert curve, which unlike the Z-order never jumps between cells that aren't next to each other
+	HILBERT
+	{
+		long getKey(int x, int y)
+		{
+			int side = 1 << BITS;
+			long key = 0;
+			for(int s = side / 2; s > 0; s /= 2)
+			{
+				int rx = (x & s) != 0 ? 1 : 0;
+				int ry = (y & s) != 0 ? 1 : 0;
+				key += (long) s * s * ((3 * rx) ^ ry);
+				// Rotate the quadrant so the curve inside it starts and ends in the right corners
+				if(ry == 0)
+				{
+					if(rx == 1)
+					{
+						x = side - 1 - x;
+						y = side - 1 - y;
+					}
+					int temp = x;
+					x = y;
+					y = temp;
+				}
+			}
+			return key;
+		}
+	};
+
+	// The coordinates are rounded to a grid of 2^BITS by 2^BITS cells, so the keys fit in 2 * BITS bits
+	static final int BITS = 16;
+
+	// The position along the curve of the cell (x, y) of the grid
+	abstract long getKey(int x, int y);
+
+	// The position along the curve of the point (x, y) in the unit square
+	long getKey(double x, double y)
+	{
+		return getKey(toGrid(x), toGrid(y));
+	}
+
+	private static int toGrid(double coordinate)
+	{
+		int index = (int) (coordinate * (1 << BITS));
+		if(index < 0) return 0;
+		if(index >= 1 << BITS) return (1 << BITS) - 1;
+		return index;
+	}
+
+	// Moves bit k of the low BITS bits of v to bit 2k
+	private static long spreadBits(int v)
+	{
+		long x = v & 0xFFFFL;
+		x = (x | (x << 8)) & 0x00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0FL;
+		x = (x | (x << 2)) & 0x33333333L;
+		x = (x | (x << 1)) & 0x55555555L;
+		return x;
+	}
+}
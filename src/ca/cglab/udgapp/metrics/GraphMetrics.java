@@ -0,0 +1,73 @@
+package ca.cglab.udgapp.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Adds up where the time goes while a graph is built: the wall time and bytes allocated
+// in every stage, the number of vertex pairs compared, the number of edge pairs tested
+// for an intersection and the largest number of edges the graph has had.
+// The graph records into this from its own thread while any other thread can take snapshots.
+public final class GraphMetrics implements GraphMetricsMXBean
+{
+	private final long[] stageNanos = new long[Stage.values().length];
+	private final long[] stageBytes = new long[Stage.values().length];
+	private long pairComparisons;
+	private long intersectionTests;
+	private int peakEdgeCount;
+	
+	public synchronized void recordStage(Stage stage, long nanos, long bytes)
+	{
+		stageNanos[stage.ordinal()] += nanos;
+		stageBytes[stage.ordinal()] += bytes;
+	}
+	
+	public synchronized void addPairComparisons(long count) { pairComparisons += count; }
+	public synchronized void addIntersectionTests(long count) { intersectionTests += count; }
+	public synchronized void recordEdgeCount(int count) { peakEdgeCount = Math.max(peakEdgeCount, count); }
+	
+	public synchronized MetricsSnapshot snapshot()
+	{
+		return new MetricsSnapshot(stageNanos, stageBytes, pairComparisons, intersectionTests, peakEdgeCount);
+	}
+	
+	public synchronized void reset()
+	{
+		for(int i = 0; i < stageNanos.length; i++)
+		{
+			stageNanos[i] = 0;
+			stageBytes[i] = 0;
+		}
+		pairComparisons = 0;
+		intersectionTests = 0;
+		peakEdgeCount = 0;
+	}
+	
+	// Makes these metrics visible over JMX as ca.cglab.udgapp:type=GraphMetrics,name=<name>
+	public ObjectName registerMBean(String name)
+	{
+		try
+		{
+			ObjectName objectName = new ObjectName("ca.cglab.udgapp:type=GraphMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		}
+		catch(JMException e)
+		{
+			throw new IllegalStateException("Could not register the metrics MBean", e);
+		}
+	}
+	
+	// GraphMetricsMXBean
+	public synchronized long getVertexGenerationNanos() { return stageNanos[Stage.VERTEX_GENERATION.ordinal()]; }
+	public synchronized long getEdgeBuildNanos() { return stageNanos[Stage.EDGE_BUILD.ordinal()]; }
+	public synchronized long getIntersectionTestNanos() { return stageNanos[Stage.INTERSECTION_TEST.ordinal()]; }
+	public synchronized long getSuperFreeTestNanos() { return stageNanos[Stage.SUPER_FREE_TEST.ordinal()]; }
+	public synchronized long getComponentSearchNanos() { return stageNanos[Stage.COMPONENT_SEARCH.ordinal()]; }
+	public long getTotalNanos() { return snapshot().getTotalWallNanos(); }
+	public synchronized long getPairComparisons() { return pairComparisons; }
+	public synchronized long getIntersectionTests() { return intersectionTests; }
+	public long getAllocatedBytes() { return snapshot().getTotalAllocatedBytes(); }
+	public synchronized int getPeakEdgeCount() { return peakEdgeCount; }
+}
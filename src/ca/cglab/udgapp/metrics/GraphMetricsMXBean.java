@@ -0,0 +1,21 @@
+package ca.cglab.udgapp.metrics;
+
+// The management interface of GraphMetrics, so the numbers can be watched in JConsole or VisualVM.
+// Times are in nanoseconds and every value adds up from the last reset.
+public interface GraphMetricsMXBean
+{
+	long getVertexGenerationNanos();
+	long getEdgeBuildNanos();
+	long getIntersectionTestNanos();
+	long getSuperFreeTestNanos();
+	long getComponentSearchNanos();
+	long getTotalNanos();
+	
+	long getPairComparisons();
+	long getIntersectionTests();
+	// -1 if the JVM can't count allocations
+	long getAllocatedBytes();
+	int getPeakEdgeCount();
+	
+	void reset();
+}
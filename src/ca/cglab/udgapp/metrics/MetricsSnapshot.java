@@ -0,0 +1,78 @@
+package ca.cglab.udgapp.metrics;
+
+import java.util.Locale;
+
+// The values of a GraphMetrics at one point in time. Never changes once created.
+public final class MetricsSnapshot
+{
+	private final long[] stageNanos;
+	private final long[] stageBytes;
+	private final long pairComparisons;
+	private final long intersectionTests;
+	private final int peakEdgeCount;
+	
+	MetricsSnapshot(long[] stageNanos, long[] stageBytes, long pairComparisons, long intersectionTests, int peakEdgeCount)
+	{
+		this.stageNanos = stageNanos.clone();
+		this.stageBytes = stageBytes.clone();
+		this.pairComparisons = pairComparisons;
+		this.intersectionTests = intersectionTests;
+		this.peakEdgeCount = peakEdgeCount;
+	}
+	
+	public long getWallNanos(Stage stage) { return stageNanos[stage.ordinal()]; }
+	
+	public double getWallMillis(Stage stage) { return stageNanos[stage.ordinal()] / 1e6; }
+	
+	// -1 if the JVM can't count allocations
+	public long getAllocatedBytes(Stage stage)
+	{
+		return ThreadAllocation.isSupported() ? stageBytes[stage.ordinal()] : -1;
+	}
+	
+	public long getTotalWallNanos()
+	{
+		long total = 0;
+		for(long nanos : stageNanos)
+		{
+			total += nanos;
+		}
+		return total;
+	}
+	
+	public long getTotalAllocatedBytes()
+	{
+		if(!ThreadAllocation.isSupported())
+		{
+			return -1;
+		}
+		long total = 0;
+		for(long bytes : stageBytes)
+		{
+			total += bytes;
+		}
+		return total;
+	}
+	
+	// Getters
+	public long getPairComparisons() { return pairComparisons; }
+	public long getIntersectionTests() { return intersectionTests; }
+	public int getPeakEdgeCount() { return peakEdgeCount; }
+	
+	// One line with the time of every stage, for status bars and logs
+	public String toString()
+	{
+		StringBuilder text = new StringBuilder();
+		for(Stage stage : Stage.values())
+		{
+			if(text.length() > 0) text.append(", ");
+			text.append(stage.getLabel()).append(' ').append(String.format(Locale.ROOT, "%.1f ms", getWallMillis(stage)));
+		}
+		long bytes = getTotalAllocatedBytes();
+		if(bytes >= 0)
+		{
+			text.append(", ").append(String.format(Locale.ROOT, "%.1f MB allocated", bytes / (1024.0 * 1024.0)));
+		}
+		return text.toString();
+	}
+}
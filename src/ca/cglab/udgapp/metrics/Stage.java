@@ -0,0 +1,20 @@
+package ca.cglab.udgapp.metrics;
+
+// The stages of building a graph and classifying its edges that are timed separately
+public enum Stage
+{
+	VERTEX_GENERATION("vertices"),
+	EDGE_BUILD("edges"),
+	INTERSECTION_TEST("intersections"),
+	SUPER_FREE_TEST("super free"),
+	COMPONENT_SEARCH("components");
+	
+	private final String label;
+	
+	private Stage(String label)
+	{
+		this.label = label;
+	}
+	
+	public String getLabel() { return label; }
+}
@@ -0,0 +1,68 @@
+package ca.cglab.udgapp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+// Reads how many bytes threads have allocated on the heap.
+// This needs the HotSpot extension of ThreadMXBean; on other JVMs every method returns -1.
+public final class ThreadAllocation
+{
+	private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+	
+	private ThreadAllocation() {}
+	
+	private static com.sun.management.ThreadMXBean findThreadBean()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+			if(hotSpotThreads.isThreadAllocatedMemorySupported())
+			{
+				hotSpotThreads.setThreadAllocatedMemoryEnabled(true);
+				if(hotSpotThreads.isThreadAllocatedMemoryEnabled())
+				{
+					return hotSpotThreads;
+				}
+			}
+		}
+		return null;
+	}
+	
+	public static boolean isSupported()
+	{
+		return THREADS != null;
+	}
+	
+	// Bytes allocated so far by the calling thread
+	public static long getCurrentThreadAllocatedBytes()
+	{
+		return getAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	public static long getAllocatedBytes(long threadId)
+	{
+		return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(threadId);
+	}
+	
+	// The sum over the given threads. Threads that have died are left out.
+	public static long getAllocatedBytes(long[] threadIds)
+	{
+		if(THREADS == null)
+		{
+			return -1;
+		}
+		long total = 0;
+		for(long bytes : THREADS.getThreadAllocatedBytes(threadIds))
+		{
+			if(bytes > 0) total += bytes;
+		}
+		return total;
+	}
+	
+	// The sum over every live thread in the JVM
+	public static long getAllThreadsAllocatedBytes()
+	{
+		return THREADS == null ? -1 : getAllocatedBytes(THREADS.getAllThreadIds());
+	}
+}
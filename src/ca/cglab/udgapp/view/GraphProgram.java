@@ -7,13 +7,20 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.CancellationException;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 
-import ca.cglab.udgapp.graphmodel.BreadthFirstSearch;
+import ca.cglab.udgapp.graphmodel.CancellationToken;
+import ca.cglab.udgapp.graphmodel.GraphSummary;
+import ca.cglab.udgapp.graphmodel.ProgressListener;
+import ca.cglab.udgapp.graphmodel.RadiusSweep;
+import ca.cglab.udgapp.graphmodel.RandomPoints;
 import ca.cglab.udgapp.graphmodel.UnEditableTableModel;
 import ca.cglab.udgapp.graphmodel.UnitDiskGraph;
 import static ca.cglab.udgapp.view.GraphProgramConstants.*;
@@ -23,6 +30,10 @@ public class GraphProgram
 {
 	public static final boolean DEBUG = false;
 	
+	// A new radius sweep finds the pairs up to this many times the radius, so that
+	// updates with a somewhat smaller epsilon can use it too
+	private static final double SWEEP_RADIUS_FACTOR = 1.5;
+	
 	////// Begin Variables //////
 	private JFrame frame;
 	
@@ -37,10 +48,13 @@ public class GraphProgram
 	// epsilon is normally a very small number
 	private float epsilon = 0;
 	private int k = 1;
+	// An empty seed means that every update uses a new random seed
+	private String seedText = "";
 	
 	// North Panel GUI components
 	private JLabel numVerticesLabel;
 	private JLabel kLabel;
+	private JLabel seedLabel;
 	private JLabel aLabel;
 	private JLabel bLabel;
 	private JLabel epsilonLabel;
@@ -48,6 +62,7 @@ public class GraphProgram
 	
 	private JTextField numVerticesTextField;
 	private JTextField kTextField;
+	private JTextField seedTextField;
 	
 	private JTextField aTextField;
 	private JTextField bTextField;
@@ -67,6 +82,21 @@ public class GraphProgram
 	private JLabel intersectingEdgesLabel;
 	private JLabel freeEdgesLabel;
 	private JLabel superFreeEdgesLabel;
+	private JLabel seedValueLabel;
+	
+	// South Panel GUI components
+	private JProgressBar progressBar;
+	private JButton cancelButton;
+	private JLabel metricsLabel;
+	
+	// The update that is running, if any
+	private GraphUpdater currentUpdater;
+	
+	// While only the radius changes the vertices are kept and the updates are read off this sweep,
+	// which only has to add the edges up to the new radius. Null whenever the vertices change.
+	private RadiusSweep sweep;
+	// True once udg has all the vertices for its seed and vertex count
+	private boolean haveVertices;
 	////// End Variables //////
 	
 	private float getMaxDistance()
@@ -79,7 +109,19 @@ public class GraphProgram
 		// Use a SwingWorker thread to do all the updating work on the graph so that the GUI does not freeze.
 		// This also allows for the user to quit the program by going to Help -> Quit
 		// because the GUI won't be frozen.
-		new GraphUpdater(new BreadthFirstSearch(udg)).execute();
+		// Only one update runs at a time, the cancel button stops it.
+		updateButton.setEnabled(false);
+		cancelButton.setEnabled(true);
+		currentUpdater = new GraphUpdater();
+		currentUpdater.execute();
+	}
+	
+	public void cancelUpdate()
+	{
+		if(currentUpdater != null)
+		{
+			currentUpdater.cancelUpdate();
+		}
 	}
 	
 	private void showErrorMessage(String message)
@@ -94,6 +136,7 @@ public class GraphProgram
 		epsilonTextField.setText(Float.toString(epsilon));
 		numVerticesTextField.setText(Integer.toString(numVertices));
 		kTextField.setText(Integer.toString(k));
+		seedTextField.setText(seedText);
 	}
 	
 	private float retrieveEpsilonFromTextFields()
@@ -122,18 +165,32 @@ public class GraphProgram
 		return Integer.parseInt(kTextField.getText());
 	}
 	
+	// Returns the seed typed in by the user, or a new random seed if the field is empty
+	private long retrieveSeedFromTextField()
+	{
+		String text = seedTextField.getText().trim();
+		long seed = text.isEmpty() ? RandomPoints.newSeed() : Long.parseLong(text);
+		seedText = text;
+		return seed;
+	}
+	
 	public void createAndShowGUI()
 	{
 		frame = new JFrame(PROGRAM_TITLE);
 		JPanel mainPanel = (JPanel)frame.getContentPane();
 		
+		// The test panel draws the super free rectangles so they have to be kept around
+		udg.setRecordPaths(DEBUG);
+		udg.setParallelism(Runtime.getRuntime().availableProcessors());
+		// Lets JConsole or VisualVM show where the time of each update goes
+		udg.getMetrics().registerMBean("GraphProgram");
 		udg.createNewRandomVertices();
+		haveVertices = true;
 		udg.setMaxDistance(getMaxDistance());
 		udg.createNewConnectedEdges();
 		udg.determineIntersectingEdges();
 		
-		BreadthFirstSearch bfs = new BreadthFirstSearch(udg);
-		bfs.determineAllConnectedComponents();
+		GraphSummary summary = GraphSummary.of(udg, GraphSummary.DEFAULT_LENGTH_BINS);
 
 		if(DEBUG)
 		{
@@ -144,7 +201,7 @@ public class GraphProgram
 		else
 		{
 			mainPanel.add(createNorthPanel(), BorderLayout.NORTH);
-			mainPanel.add(createEastPanel(bfs), BorderLayout.EAST);
+			mainPanel.add(createEastPanel(summary), BorderLayout.EAST);
 			mainPanel.add(createWestPanel(), BorderLayout.WEST);
 			mainPanel.add(createSouthPanel(), BorderLayout.SOUTH);
 			mainPanel.add(createCenterPanel(), BorderLayout.CENTER);
@@ -164,27 +221,34 @@ public class GraphProgram
 		final Dimension prefTextFieldSize = new Dimension(50, 30);
 		JPanel northPanel = new JPanel();
 		
-		JPanel leftPanel = new JPanel(new GridLayout(2, 2, 0, 30));
+		JPanel leftPanel = new JPanel(new GridLayout(3, 2, 0, 30));
 		leftPanel.setBorder(emptyBorder);
 		
 		numVerticesLabel = new JLabel("n = ");
 		kLabel = new JLabel("k = ");
+		seedLabel = new JLabel("seed = ");
 		
 		numVerticesTextField = new JTextField(Integer.toString(numVertices));
 		kTextField = new JTextField(Integer.toString(k));
+		seedTextField = new JTextField(seedText);
 		
 		numVerticesLabel.setFont(COMMON_LABEL_FONT);
 		kLabel.setFont(COMMON_LABEL_FONT);
+		seedLabel.setFont(COMMON_LABEL_FONT);
 		
 		numVerticesTextField.setFont(TEXT_FIELD_FONT);
 		numVerticesTextField.setPreferredSize(prefTextFieldSize);
 		kTextField.setFont(TEXT_FIELD_FONT);
 		kTextField.setPreferredSize(prefTextFieldSize);
+		seedTextField.setFont(TEXT_FIELD_FONT);
+		seedTextField.setPreferredSize(prefTextFieldSize);
 		
 		leftPanel.add(numVerticesLabel);
 		leftPanel.add(numVerticesTextField);
 		leftPanel.add(kLabel);
 		leftPanel.add(kTextField);
+		leftPanel.add(seedLabel);
+		leftPanel.add(seedTextField);
 		
 		JPanel middlePanel = new JPanel(new GridLayout(3, 2, 0, 30));
 		middlePanel.setBorder(emptyBorder);
@@ -237,7 +301,7 @@ public class GraphProgram
 		return northPanel;
 	}
 	
-	private JPanel createEastPanel(BreadthFirstSearch bfs)
+	private JPanel createEastPanel(GraphSummary summary)
 	{
 		JPanel eastPanel = new JPanel();
 		BoxLayout boxLayout = new BoxLayout(eastPanel, BoxLayout.Y_AXIS);
@@ -255,18 +319,9 @@ public class GraphProgram
 		{
 			String numVertices = Integer.toString(i + 1);
 			tableModel.setValueAt(numVertices, i, 0);
-			String numComponents = Integer.toString(bfs.numConnectedComponentsWithKVertices(i + 1));
-			tableModel.setValueAt(numComponents, i, 1);
 		}
-		
-		int numVerticesInLargestComponent = bfs.getNumVerticesinLargestComponent();
-		int numLargestComponents = bfs.numConnectedComponentsWithAtLeastKVertices(numVerticesInLargestComponent);
-		
-		tableModel.setValueAt("Largest(" + Integer.toString(numVerticesInLargestComponent) + ")", 5, 0);
-		tableModel.setValueAt(Integer.toString(numLargestComponents), 5, 1);
-		
 		tableModel.setValueAt(">= k", 6, 0);
-		tableModel.setValueAt(Integer.toString(bfs.numConnectedComponentsWithAtLeastKVertices(k)), 6, 1);
+		setComponentTableValues(summary);
 
 		table = new JTable(tableModel);
 		table.setFont(COMMON_LABEL_FONT);
@@ -290,6 +345,24 @@ public class GraphProgram
 		return eastPanel;
 	}
 	
+	// Every cell is a lookup in the summary, nothing goes over the graph again
+	private void setComponentTableValues(GraphSummary summary)
+	{
+		for(int i = 0; i < 5; i++)
+		{
+			String numComponents = Integer.toString(summary.getNumComponentsOfSize(i + 1));
+			tableModel.setValueAt(numComponents, i, 1);
+		}
+		
+		int numVerticesInLargestComponent = summary.getNumVerticesInLargestComponent();
+		int numLargestComponents = summary.getNumComponentsOfSize(numVerticesInLargestComponent);
+		
+		tableModel.setValueAt("Largest(" + Integer.toString(numVerticesInLargestComponent) + ")", 5, 0);
+		tableModel.setValueAt(Integer.toString(numLargestComponents), 5, 1);
+		
+		tableModel.setValueAt(Integer.toString(summary.getNumComponentsWithAtLeastKVertices(k)), 6, 1);
+	}
+	
 	private JPanel createWestPanel()
 	{
 		final int insets = 20;
@@ -308,23 +381,27 @@ public class GraphProgram
 		intersectingEdgesLabel = new JLabel("Intersecting: " + intersectingEdges);
 		freeEdgesLabel = new JLabel("Free: " + freeEdges);
 		superFreeEdgesLabel = new JLabel("Super Free: " + Integer.toString(udg.getNumSuperFreeEdges()));
+		seedValueLabel = new JLabel("Seed: " + Long.toString(udg.getSeed()));
 		
 		edgeInformationTitle.setFont(TITLE_FONT);
 		totalEdgesLabel.setFont(COMMON_LABEL_FONT);
 		intersectingEdgesLabel.setFont(COMMON_LABEL_FONT);
 		freeEdgesLabel.setFont(COMMON_LABEL_FONT);
 		superFreeEdgesLabel.setFont(COMMON_LABEL_FONT);
+		seedValueLabel.setFont(COMMON_LABEL_FONT);
 		
 		totalEdgesLabel.setBorder(emptyBorder);
 		intersectingEdgesLabel.setBorder(emptyBorder);
 		freeEdgesLabel.setBorder(emptyBorder);
 		superFreeEdgesLabel.setBorder(emptyBorder);
+		seedValueLabel.setBorder(emptyBorder);
 		
 		westPanel.add(edgeInformationTitle);
 		westPanel.add(totalEdgesLabel);
 		westPanel.add(intersectingEdgesLabel);
 		westPanel.add(freeEdgesLabel);
 		westPanel.add(superFreeEdgesLabel);
+		westPanel.add(seedValueLabel);
 
 		return westPanel;
 	}
@@ -332,6 +409,23 @@ public class GraphProgram
 	private JPanel createSouthPanel()
 	{
 		JPanel southPanel = new JPanel();
+		
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		
+		cancelButton = new JButton("Cancel");
+		cancelButton.setFont(COMMON_LABEL_FONT);
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new GraphCancelAction());
+		
+		// Shows how long each stage of the last update took
+		metricsLabel = new JLabel(udg.getMetrics().snapshot().toString());
+		
+		southPanel.add(progressBar);
+		southPanel.add(cancelButton);
+		southPanel.add(metricsLabel);
+		
 		return southPanel;
 	}
 	
@@ -380,17 +474,56 @@ public class GraphProgram
 		}
 	}
 	
+	// Used as the event handler for the cancel button
+	public final class GraphCancelAction implements ActionListener
+	{
+		public void actionPerformed(ActionEvent ae)
+		{
+			cancelUpdate();
+		}
+	}
+	
 	// Inner class for a SwingWorker thread that does 
 	// time consuming work in the background without locking up the GUI.
 	public final class GraphUpdater extends SwingWorker<Void, Void>
 	{
-		private BreadthFirstSearch bfs;
+		// Worked out once the graph is built, the table and labels only read it
+		private GraphSummary summary;
+		private int numEdges;
+		private int numIntersectingEdges;
+		private int numSuperFreeEdges;
+		// True if only the radius changed and the counts come from the sweep
+		private boolean fromSweep;
 		private Exception e;
 		
-		public GraphUpdater(BreadthFirstSearch bfs)
+		// Stops the loops in the graph when the user presses cancel
+		private final CancellationToken token;
+		// The stage the graph is working on, shown on the progress bar
+		private volatile String task;
+		
+		public GraphUpdater()
 		{
-			this.bfs = bfs;
+			this.summary = null;
 			this.e = null;
+			this.token = new CancellationToken();
+			this.task = "";
+			
+			addPropertyChangeListener(new PropertyChangeListener()
+			{
+				public void propertyChange(PropertyChangeEvent event)
+				{
+					if("progress".equals(event.getPropertyName()))
+					{
+						progressBar.setValue((Integer) event.getNewValue());
+						progressBar.setString(task + " " + event.getNewValue() + "%");
+					}
+				}
+			});
+		}
+		
+		public void cancelUpdate()
+		{
+			token.cancel();
 		}
 		
 		protected Void doInBackground() throws Exception
@@ -404,48 +537,125 @@ public class GraphProgram
 				k = retrieveKFromTextField();
 				exponent = retrieveExponentFromTextFields();
 				epsilon = retrieveEpsilonFromTextFields();
+				long seed = retrieveSeedFromTextField();
 				
-				udg.removeAllVertices();
-				udg.setNumVertices(numVertices);
-				udg.createNewRandomVertices();
-				udg.setMaxDistance(getMaxDistance());
-				udg.createNewConnectedEdges();
-				udg.determineIntersectingEdges();
-				
-				bfs.determineAllConnectedComponents();
+				udg.getMetrics().reset();
+				udg.setCancellationToken(token);
+				udg.setProgressListener(new ProgressListener()
+				{
+					public void progressMade(String name, long done, long total)
+					{
+						task = name;
+						setProgress(total <= 0 ? 100 : (int) Math.max(0, Math.min(100, done * 100 / total)));
+					}
+				});
+				// The recorded paths come from the graph, so the debug view always rebuilds it
+				if(!DEBUG && haveVertices && udg.getVertexCount() == numVertices && udg.getSeed() == seed)
+				{
+					fromSweep = true;
+					advanceSweep(getMaxDistance());
+				}
+				else
+				{
+					sweep = null;
+					haveVertices = false;
+					udg.removeAllVertices();
+					udg.setNumVertices(numVertices);
+					udg.setSeed(seed);
+					udg.createNewRandomVertices();
+					haveVertices = true;
+					udg.setMaxDistance(getMaxDistance());
+					udg.createNewConnectedEdges();
+					udg.determineIntersectingEdges();
+					
+					readGraph();
+				}
 			}
 			catch(Exception e)
 			{
 				this.e = e;
 			}
+			finally
+			{
+				udg.setCancellationToken(null);
+				udg.setProgressListener(null);
+			}
 			
 			return null;
 		}
 		
+		// Only the radius changed, so the vertices stay and the sweep only adds the edges up to the
+		// new radius, or starts again from no edges if the radius went down
+		private void advanceSweep(double radius)
+		{
+			if(sweep == null || radius > sweep.getMaxRadius())
+			{
+				sweep = null;
+				sweep = udg.createRadiusSweep(radius * SWEEP_RADIUS_FACTOR);
+			}
+			else if(radius < sweep.getRadius())
+			{
+				sweep.reset();
+			}
+			sweep.setCancellationToken(token);
+			try
+			{
+				task = "Radius sweep";
+				sweep.advanceTo(radius);
+				numSuperFreeEdges = sweep.countSuperFreeEdges();
+			}
+			catch(CancellationException e)
+			{
+				// Left part of the way, the next update starts it again
+				sweep.reset();
+				throw e;
+			}
+			finally
+			{
+				sweep.setCancellationToken(null);
+			}
+			numEdges = sweep.getNumEdges();
+			numIntersectingEdges = sweep.getNumIntersectingEdges();
+			summary = GraphSummary.of(sweep, GraphSummary.DEFAULT_LENGTH_BINS);
+		}
+		
+		private void readGraph()
+		{
+			numEdges = udg.getNumEdges();
+			numIntersectingEdges = udg.getNumIntersectingEdges();
+			numSuperFreeEdges = udg.getNumSuperFreeEdges();
+			summary = GraphSummary.of(udg, GraphSummary.DEFAULT_LENGTH_BINS);
+		}
+		
 		protected void done()
 		{
-			if(e == null)
+			if(e instanceof CancellationException && fromSweep)
 			{
-				totalEdgesLabel.setText("Total: " + Integer.toString(udg.getNumEdges()));
-				intersectingEdgesLabel.setText("Intersecting: " + Integer.toString(udg.getNumIntersectingEdges()));
-				freeEdgesLabel.setText("Free: " + Integer.toString(udg.getNumFreeEdges()));
-				superFreeEdgesLabel.setText("Super Free: " + Integer.toString(udg.getNumSuperFreeEdges()));
-				
-				radiusLabel.setText("r = " + Float.toString(getMaxDistance()));
-				
-				for(int i = 0; i < 5; i++)
+				// The sweep has nothing to show until it gets to a radius
+				metricsLabel.setText("Update cancelled");
+			}
+			else if(e == null || e instanceof CancellationException)
+			{
+				if(e != null)
 				{
-					String numComponents = Integer.toString(bfs.numConnectedComponentsWithKVertices(i + 1));
-					tableModel.setValueAt(numComponents, i, 1);
+					// The graph dropped whatever it was building, so show what is left of it
+					readGraph();
 				}
+				totalEdgesLabel.setText("Total: " + Integer.toString(numEdges));
+				intersectingEdgesLabel.setText("Intersecting: " + Integer.toString(numIntersectingEdges));
+				freeEdgesLabel.setText("Free: " + Integer.toString(numEdges - numIntersectingEdges));
+				superFreeEdgesLabel.setText("Super Free: " + Integer.toString(numSuperFreeEdges));
+				seedValueLabel.setText("Seed: " + Long.toString(udg.getSeed()));
+				metricsLabel.setText(udg.getMetrics().snapshot().toString());
 				
-				int numVerticesInLargestComponent = bfs.getNumVerticesinLargestComponent();
-				int numLargestComponents = bfs.numConnectedComponentsWithAtLeastKVertices(numVerticesInLargestComponent);
+				radiusLabel.setText("r = " + Float.toString(getMaxDistance()));
 				
-				tableModel.setValueAt("Largest(" + Integer.toString(numVerticesInLargestComponent) + ")", 5, 0);
-				tableModel.setValueAt(Integer.toString(numLargestComponents), 5, 1);
+				setComponentTableValues(summary);
 				
-				tableModel.setValueAt(Integer.toString(bfs.numConnectedComponentsWithAtLeastKVertices(k)), 6, 1);
+				if(e != null)
+				{
+					metricsLabel.setText("Update cancelled");
+				}
 			}
 			else
 			{
@@ -460,6 +670,12 @@ public class GraphProgram
 					showErrorMessage("Cannot divide by zero.");
 				}
 			}
+			
+			progressBar.setValue(0);
+			progressBar.setString("");
+			updateButton.setEnabled(true);
+			cancelButton.setEnabled(false);
+			currentUpdater = null;
 			frame.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
 		}
 		
@@ -33,6 +33,7 @@ public class GraphProgramConstants
 	"<li><i>b</i> - Used in calculating <i>r</i></li>"+
 	"<li><i>" + UNICODE_EPSILON + "</i> - Used in calculating <i>r</i></li>"+
 	"<li><i>r</i> - Radius/Distance threshold</li>"+
+	"<li><i>seed</i> - Places the vertices, the same seed always gives the same graph (leave empty for a new random graph)</li>"+
 	"</ul>"+
 	"<div><i>r</i> is calculated as follows: </div>"+
 	"<div><font color='blue'>r = 1 / n pow ((a / b) +" + UNICODE_EPSILON + "))</font></div>"+